@@ -26,10 +26,14 @@
 package com.nannoq.tools.cluster;
 
 import com.nannoq.tools.cluster.services.ServiceManager;
+import com.nannoq.tools.cluster.tracing.Span;
+import com.nannoq.tools.cluster.tracing.TraceContext;
+import com.nannoq.tools.cluster.tracing.Tracer;
 import io.vertx.circuitbreaker.CircuitBreaker;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -51,10 +55,20 @@ public class CircuitBreakerUtils {
                                                             Handler<AsyncResult<T>> resultHandler,
                                                             Handler<Future<T>> handler,
                                                             Consumer<Throwable> backup) {
+        final Tracer tracer = Tracer.current();
+        final Span span = tracer == null ? null :
+                tracer.startSpan(circuitBreaker.name(), Span.Kind.INTERNAL, TraceContext.current());
+
         Future<T> result = Future.future();
         result.setHandler(operationResult -> {
             logger.debug("Received " + circuitBreaker.name() + " Result: " + operationResult.succeeded());
 
+            if (span != null) {
+                span.finish(operationResult.succeeded(),
+                        operationResult.failed() && operationResult.cause() != null ?
+                                operationResult.cause().getMessage() : null);
+            }
+
             if (operationResult.succeeded()) {
                 resultHandler.handle(Future.succeededFuture(operationResult.result()));
             } else {
@@ -75,7 +89,77 @@ public class CircuitBreakerUtils {
             }
         });
 
-        circuitBreaker.executeAndReport(result, handler);
+        if (span == null) {
+            circuitBreaker.executeAndReport(result, handler);
+        } else {
+            circuitBreaker.executeAndReport(result, operation -> {
+                TraceContext previous = TraceContext.setCurrent(span.context());
+
+                try {
+                    handler.handle(operation);
+                } finally {
+                    TraceContext.setCurrent(previous);
+                }
+            });
+        }
+    }
+
+    /**
+     * Performs the request with the circuitbreaker, capping its timeout by the remaining budget of the deadline. The
+     * request is not executed at all if the deadline has already passed.
+     *
+     * @param vertx Vertx
+     * @param circuitBreaker CircuitBreaker
+     * @param deadline Deadline, may be null
+     * @param resultHandler Handler of AsyncResult of T
+     * @param handler Handler of Future of T
+     * @param backup Consumer of Throwable
+     * @param <T> Result type
+     */
+    public static <T> void performRequestWithCircuitBreaker(Vertx vertx, CircuitBreaker circuitBreaker,
+                                                            Deadline deadline,
+                                                            Handler<AsyncResult<T>> resultHandler,
+                                                            Handler<Future<T>> handler,
+                                                            Consumer<Throwable> backup) {
+        if (deadline == null) {
+            performRequestWithCircuitBreaker(circuitBreaker, resultHandler, handler, backup);
+
+            return;
+        }
+
+        if (deadline.isExpired()) {
+            logger.debug("Deadline exceeded, dropping " + circuitBreaker.name() + " request");
+
+            resultHandler.handle(ServiceException.fail(Deadline.DEADLINE_EXCEEDED,
+                    "Deadline exceeded before " + circuitBreaker.name()));
+
+            return;
+        }
+
+        performRequestWithCircuitBreaker(circuitBreaker, resultHandler, operation -> {
+            Future<T> bounded = Future.future();
+            long timerId = vertx.setTimer(Math.max(1L, deadline.remaining()), id ->
+                    bounded.tryFail(new ServiceException(Deadline.DEADLINE_EXCEEDED,
+                            "Deadline exceeded in " + circuitBreaker.name())));
+
+            bounded.setHandler(boundedResult -> {
+                vertx.cancelTimer(timerId);
+
+                if (boundedResult.succeeded()) {
+                    operation.tryComplete(boundedResult.result());
+                } else {
+                    operation.tryFail(boundedResult.cause());
+                }
+            });
+
+            Deadline previous = Deadline.setCurrent(deadline);
+
+            try {
+                handler.handle(bounded);
+            } finally {
+                Deadline.setCurrent(previous);
+            }
+        }, backup);
     }
 
     /**
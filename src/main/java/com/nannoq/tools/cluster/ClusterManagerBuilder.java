@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MultiMapConfig;
+import com.hazelcast.config.NearCacheConfig;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+
+/**
+ * This class defines a builder for HazelcastClusterManagers tuned for Vert.x clustering. A preset gives the baseline,
+ * and any value set explicitly on the builder overrides it. Without a config of its own the builder tunes the config
+ * Vert.x would load, cluster.xml or the bundled default-cluster.xml, so the maps Vert.x relies on and the join
+ * settings are kept.
+ *
+ * The event bus subscription multimap and the service discovery map are written on every consumer registration and
+ * publish, so the presets move their backups off the write path, and put a near cache in front of discovery reads.
+ * Heartbeat intervals decide how fast a dead member is detected and its subscriptions are cleaned up.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ClusterManagerBuilder {
+    public static final String SUBS_MAP_NAME = "__vertx.subs";
+    public static final String DEFAULT_DISCOVERY_MAP_NAME = "service.registry";
+
+    public enum Preset {
+        DEFAULT(null, null, null, null, null, null, false, null),
+        LOW_LATENCY(271, Runtime.getRuntime().availableProcessors(), 2, 3, 1, 10, true, 30),
+        HIGH_THROUGHPUT(271, Runtime.getRuntime().availableProcessors() * 2, 4, 6, 5, 60, true, 120);
+
+        private final Integer partitionCount;
+        private final Integer operationThreads;
+        private final Integer genericOperationThreads;
+        private final Integer ioThreads;
+        private final Integer heartbeatIntervalSeconds;
+        private final Integer maxNoHeartbeatSeconds;
+        private final boolean asyncBackups;
+        private final Integer nearCacheTtlSeconds;
+
+        Preset(Integer partitionCount, Integer operationThreads, Integer genericOperationThreads, Integer ioThreads,
+               Integer heartbeatIntervalSeconds, Integer maxNoHeartbeatSeconds, boolean asyncBackups,
+               Integer nearCacheTtlSeconds) {
+            this.partitionCount = partitionCount;
+            this.operationThreads = operationThreads;
+            this.genericOperationThreads = genericOperationThreads;
+            this.ioThreads = ioThreads;
+            this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+            this.maxNoHeartbeatSeconds = maxNoHeartbeatSeconds;
+            this.asyncBackups = asyncBackups;
+            this.nearCacheTtlSeconds = nearCacheTtlSeconds;
+        }
+    }
+
+    private Config config;
+    private Preset preset = Preset.DEFAULT;
+    private String discoveryMapName = DEFAULT_DISCOVERY_MAP_NAME;
+    private Integer partitionCount;
+    private Integer operationThreads;
+    private Integer genericOperationThreads;
+    private Integer ioThreads;
+    private Integer heartbeatIntervalSeconds;
+    private Integer maxNoHeartbeatSeconds;
+    private Boolean asyncBackups;
+    private Integer nearCacheTtlSeconds;
+
+    ClusterManagerBuilder() {
+    }
+
+    public ClusterManagerBuilder setConfig(Config config) {
+        this.config = config;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setPreset(Preset preset) {
+        this.preset = preset;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setDiscoveryMapName(String discoveryMapName) {
+        this.discoveryMapName = discoveryMapName;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setOperationThreads(int operationThreads) {
+        this.operationThreads = operationThreads;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setGenericOperationThreads(int genericOperationThreads) {
+        this.genericOperationThreads = genericOperationThreads;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setHeartbeatIntervalSeconds(int heartbeatIntervalSeconds) {
+        this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setMaxNoHeartbeatSeconds(int maxNoHeartbeatSeconds) {
+        this.maxNoHeartbeatSeconds = maxNoHeartbeatSeconds;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setAsyncBackups(boolean asyncBackups) {
+        this.asyncBackups = asyncBackups;
+
+        return this;
+    }
+
+    public ClusterManagerBuilder setNearCacheTtlSeconds(int nearCacheTtlSeconds) {
+        this.nearCacheTtlSeconds = nearCacheTtlSeconds;
+
+        return this;
+    }
+
+    public HazelcastClusterManager build() {
+        return new HazelcastClusterManager(buildConfig());
+    }
+
+    public Config buildConfig() {
+        final Config tuned = config == null ? loadDefaultConfig() : config;
+
+        setProperty(tuned, "hazelcast.partition.count", choose(partitionCount, preset.partitionCount));
+        setProperty(tuned, "hazelcast.operation.thread.count", choose(operationThreads, preset.operationThreads));
+        setProperty(tuned, "hazelcast.operation.generic.thread.count",
+                choose(genericOperationThreads, preset.genericOperationThreads));
+        setProperty(tuned, "hazelcast.io.thread.count", choose(ioThreads, preset.ioThreads));
+        setProperty(tuned, "hazelcast.heartbeat.interval.seconds",
+                choose(heartbeatIntervalSeconds, preset.heartbeatIntervalSeconds));
+        setProperty(tuned, "hazelcast.max.no.heartbeat.seconds",
+                choose(maxNoHeartbeatSeconds, preset.maxNoHeartbeatSeconds));
+
+        if (asyncBackups != null ? asyncBackups : preset.asyncBackups) {
+            final MultiMapConfig subsConfig = tuned.getMultiMapConfig(SUBS_MAP_NAME);
+            subsConfig.setBackupCount(0);
+            subsConfig.setAsyncBackupCount(1);
+
+            final MapConfig discoveryConfig = tuned.getMapConfig(discoveryMapName);
+            discoveryConfig.setBackupCount(0);
+            discoveryConfig.setAsyncBackupCount(1);
+        }
+
+        final Integer nearCacheTtl = choose(nearCacheTtlSeconds, preset.nearCacheTtlSeconds);
+
+        if (nearCacheTtl != null) {
+            tuned.getMapConfig(discoveryMapName).setNearCacheConfig(new NearCacheConfig()
+                    .setInMemoryFormat(InMemoryFormat.OBJECT)
+                    .setInvalidateOnChange(true)
+                    .setCacheLocalEntries(true)
+                    .setTimeToLiveSeconds(nearCacheTtl));
+        }
+
+        return tuned;
+    }
+
+    private static Config loadDefaultConfig() {
+        final Config loaded = new HazelcastClusterManager().loadConfig();
+
+        return loaded == null ? new Config() : loaded;
+    }
+
+    private static Integer choose(Integer explicit, Integer preset) {
+        return explicit != null ? explicit : preset;
+    }
+
+    private static void setProperty(Config config, String name, Integer value) {
+        if (value != null) config.setProperty(name, String.valueOf(value));
+    }
+}
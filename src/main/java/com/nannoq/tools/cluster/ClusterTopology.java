@@ -0,0 +1,263 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * This class defines an always current view of the cluster, maintained from Hazelcast membership events. It keeps the
+ * member list with join and leave timestamps, a bounded history of membership events, and a round trip time matrix
+ * between nodes measured with periodic event bus pings. Every node shares its own row of the matrix, so the view can
+ * be queried from any node on TOPOLOGY_ADDRESS.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ClusterTopology {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterTopology.class.getSimpleName());
+
+    public static final String TOPOLOGY_ADDRESS = "com.nannoq.cluster.topology";
+    private static final String PING_ADDRESS_BASE = "com.nannoq.cluster.topology.ping.";
+    private static final String RTT_ADDRESS = "com.nannoq.cluster.topology.rtt";
+    private static final long DEFAULT_PROBE_INTERVAL = 10000L;
+    private static final int MAX_EVENTS = 256;
+
+    private static final Map<Vertx, ClusterTopology> instanceMap = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+    private final HazelcastInstance hazelcastInstance;
+    private final String localUuid;
+    private final long probeInterval;
+    private final Map<String, JsonObject> members = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> departedMembers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> rttMatrix = new ConcurrentHashMap<>();
+    private final Deque<JsonObject> events = new ArrayDeque<>();
+
+    private String membershipListenerId;
+    private long probeTimerId;
+    private MessageConsumer<JsonObject> pingConsumer;
+    private MessageConsumer<JsonObject> rttConsumer;
+    private MessageConsumer<JsonObject> topologyConsumer;
+
+    private ClusterTopology(Vertx vertx, HazelcastInstance hazelcastInstance, long probeInterval) {
+        this.vertx = vertx;
+        this.hazelcastInstance = hazelcastInstance;
+        this.localUuid = hazelcastInstance.getCluster().getLocalMember().getUuid();
+        this.probeInterval = probeInterval;
+    }
+
+    public static ClusterTopology start(Vertx vertx) {
+        return start(vertx, DEFAULT_PROBE_INTERVAL);
+    }
+
+    public static ClusterTopology start(Vertx vertx, long probeInterval) {
+        return instanceMap.computeIfAbsent(vertx, v -> {
+            HazelcastInstance hz = ClusterUtils.getHazelcastInstance(v);
+
+            if (hz == null) throw new IllegalStateException("Vertx is not clustered with Hazelcast!");
+
+            return new ClusterTopology(v, hz, probeInterval).open();
+        });
+    }
+
+    public static ClusterTopology get(Vertx vertx) {
+        return instanceMap.get(vertx);
+    }
+
+    private ClusterTopology open() {
+        final long now = System.currentTimeMillis();
+        hazelcastInstance.getCluster().getMembers().forEach(member -> members.put(member.getUuid(), toJson(member, now)));
+
+        membershipListenerId = hazelcastInstance.getCluster().addMembershipListener(new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent) {
+                onMemberAdded(membershipEvent.getMember());
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent) {
+                onMemberRemoved(membershipEvent.getMember());
+            }
+
+            @Override
+            public void memberAttributeChanged(MemberAttributeEvent memberAttributeEvent) {
+            }
+        });
+
+        pingConsumer = vertx.eventBus().consumer(PING_ADDRESS_BASE + localUuid, message -> message.reply(new JsonObject()));
+        rttConsumer = vertx.eventBus().consumer(RTT_ADDRESS, message -> updateRow(message.body()));
+        topologyConsumer = vertx.eventBus().consumer(TOPOLOGY_ADDRESS, message -> message.reply(toJson()));
+        probeTimerId = vertx.setPeriodic(probeInterval, id -> probe());
+
+        logger.info("Cluster topology started with " + members.size() + " members");
+
+        return this;
+    }
+
+    public void stop() {
+        instanceMap.remove(vertx);
+        vertx.cancelTimer(probeTimerId);
+        hazelcastInstance.getCluster().removeMembershipListener(membershipListenerId);
+        pingConsumer.unregister();
+        rttConsumer.unregister();
+        topologyConsumer.unregister();
+    }
+
+    private void onMemberAdded(Member member) {
+        final JsonObject info = toJson(member, System.currentTimeMillis());
+        members.put(member.getUuid(), info);
+        departedMembers.remove(member.getUuid());
+
+        recordEvent("JOINED", info);
+    }
+
+    private void onMemberRemoved(Member member) {
+        final JsonObject info = members.remove(member.getUuid());
+        final JsonObject departed = (info != null ? info : toJson(member, null)).put("leftAt", System.currentTimeMillis());
+        departedMembers.put(member.getUuid(), departed);
+        rttMatrix.remove(member.getUuid());
+        rttMatrix.values().forEach(row -> row.remove(member.getUuid()));
+
+        recordEvent("LEFT", departed);
+    }
+
+    private void recordEvent(String type, JsonObject member) {
+        logger.info("Member " + type + ": " + member.getString("address"));
+
+        synchronized (events) {
+            events.addLast(new JsonObject()
+                    .put("type", type)
+                    .put("uuid", member.getString("uuid"))
+                    .put("address", member.getString("address"))
+                    .put("timestamp", System.currentTimeMillis()));
+
+            while (events.size() > MAX_EVENTS) events.removeFirst();
+        }
+    }
+
+    private void probe() {
+        final List<String> targets = members.keySet().stream()
+                .filter(uuid -> !uuid.equals(localUuid))
+                .collect(toList());
+
+        if (targets.isEmpty()) return;
+
+        final Map<String, Long> row = new ConcurrentHashMap<>();
+        final DeliveryOptions options = new DeliveryOptions().setSendTimeout(probeInterval);
+        final AtomicInteger remaining = new AtomicInteger(targets.size());
+        final AtomicBoolean published = new AtomicBoolean();
+        final long timerId = vertx.setTimer(probeInterval + probeInterval / 2, id -> publishRow(row, published));
+
+        targets.forEach(uuid -> {
+            final long start = System.nanoTime();
+
+            vertx.eventBus().<JsonObject>send(PING_ADDRESS_BASE + uuid, new JsonObject(), options, reply -> {
+                row.put(uuid, reply.succeeded() ? (System.nanoTime() - start) / 1000L : -1L);
+
+                if (remaining.decrementAndGet() == 0) {
+                    vertx.cancelTimer(timerId);
+
+                    publishRow(row, published);
+                }
+            });
+        });
+    }
+
+    private void publishRow(Map<String, Long> row, AtomicBoolean published) {
+        if (published.compareAndSet(false, true)) {
+            vertx.eventBus().publish(RTT_ADDRESS, new JsonObject()
+                    .put("from", localUuid)
+                    .put("rttMicros", toJson(row)));
+        }
+    }
+
+    private void updateRow(JsonObject body) {
+        final Map<String, Long> row = new ConcurrentHashMap<>();
+        body.getJsonObject("rttMicros").forEach(entry -> row.put(entry.getKey(), ((Number) entry.getValue()).longValue()));
+
+        rttMatrix.put(body.getString("from"), row);
+    }
+
+    private static JsonObject toJson(Member member, Long joinedAt) {
+        return new JsonObject()
+                .put("uuid", member.getUuid())
+                .put("address", member.getSocketAddress().getAddress().getHostAddress() + ":" +
+                        member.getSocketAddress().getPort())
+                .put("joinedAt", joinedAt);
+    }
+
+    private static JsonObject toJson(Map<String, Long> row) {
+        final JsonObject json = new JsonObject();
+        row.forEach(json::put);
+
+        return json;
+    }
+
+    public JsonArray getMembers() {
+        return new JsonArray(members.values().stream().map(JsonObject::copy).collect(toList()));
+    }
+
+    public JsonObject toJson() {
+        final JsonObject matrix = new JsonObject();
+        rttMatrix.forEach((from, row) -> matrix.put(from, toJson(row)));
+
+        final JsonArray history;
+
+        synchronized (events) {
+            history = new JsonArray();
+            events.forEach(event -> history.add(event.copy()));
+        }
+
+        return new JsonObject()
+                .put("localMember", localUuid)
+                .put("members", getMembers())
+                .put("departedMembers", new JsonArray(departedMembers.values().stream()
+                        .map(JsonObject::copy).collect(toList())))
+                .put("events", history)
+                .put("rttMicros", matrix);
+    }
+}
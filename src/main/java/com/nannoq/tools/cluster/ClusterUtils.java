@@ -25,37 +25,50 @@
 
 package com.nannoq.tools.cluster;
 
+import com.hazelcast.config.ClasspathXmlConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.TcpIpConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBusOptions;
 import io.vertx.core.http.ClientAuth;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.net.JksOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.PemKeyCertOptions;
+import io.vertx.core.net.PemTrustOptions;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.CodeSource;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * This class defines helpers for operating the cluster. It can produce a member list, sets eventbus SSL, and produces
- * the modified cluster.xml file as a result of port scanning.
+ * a Hazelcast config with the members found by port scanning. Discovered members are persisted to a local cache file,
+ * which is probed before any subnet scan on the next boot.
  *
  * @author Anders Mikkelsen
  * @version 17.11.2017
@@ -63,6 +76,14 @@ import java.util.zip.ZipInputStream;
 public class ClusterUtils {
     private static final Logger logger = LoggerFactory.getLogger(ClusterUtils.class.getSimpleName());
 
+    private static final int HAZELCAST_PORT = 5701;
+    private static final String DEFAULT_MEMBER_CACHE = "/usr/verticles/cluster-members.cache";
+    private static final List<String> FAST_CIPHER_SUITES = Arrays.asList(
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384");
+
     public static void clusterReport(Long aLong) {
         Vertx vertx = Vertx.currentContext().owner();
 
@@ -71,12 +92,19 @@ public class ClusterUtils {
             sb.append("Cluster Members:\n");
             sb.append("----------------\n");
 
-            Set<HazelcastInstance> instances = Hazelcast.getAllHazelcastInstances();
-            instances.stream().findFirst().ifPresent(hz ->
-                    hz.getCluster().getMembers().stream()
-                            .map(member -> member.getSocketAddress().getAddress().toString() + ":" +
-                                    member.getSocketAddress().getPort())
-                            .forEach(name -> sb.append(name).append("\n")));
+            ClusterTopology topology = ClusterTopology.get(vertx);
+
+            if (topology != null) {
+                topology.getMembers().forEach(member ->
+                        sb.append(((JsonObject) member).getString("address")).append("\n"));
+            } else {
+                Set<HazelcastInstance> instances = Hazelcast.getAllHazelcastInstances();
+                instances.stream().findFirst().ifPresent(hz ->
+                        hz.getCluster().getMembers().stream()
+                                .map(member -> member.getSocketAddress().getAddress().toString() + ":" +
+                                        member.getSocketAddress().getPort())
+                                .forEach(name -> sb.append(name).append("\n")));
+            }
 
             sb.append("----------------");
 
@@ -86,6 +114,28 @@ public class ClusterUtils {
         }
     }
 
+    /**
+     * Finds the HazelcastInstance backing this vertx, falling back to the first instance in the JVM.
+     *
+     * @param vertx Vertx
+     * @return HazelcastInstance, or null if there is none
+     */
+    public static HazelcastInstance getHazelcastInstance(Vertx vertx) {
+        if (vertx instanceof VertxInternal) {
+            ClusterManager clusterManager = ((VertxInternal) vertx).getClusterManager();
+
+            if (clusterManager instanceof HazelcastClusterManager) {
+                return ((HazelcastClusterManager) clusterManager).getHazelcastInstance();
+            }
+        }
+
+        return Hazelcast.getAllHazelcastInstances().stream().findFirst().orElse(null);
+    }
+
+    public static ClusterManagerBuilder clusterManagerBuilder() {
+        return new ClusterManagerBuilder();
+    }
+
     public static EventBusOptions setSSLEventBus(String keystoreName, String keyStoreKey, EventBusOptions eventBusOptions) {
         eventBusOptions.setSsl(true)
                 .setKeyStoreOptions(new JksOptions().setPath(keystoreName).setPassword(keyStoreKey))
@@ -95,118 +145,277 @@ public class ClusterUtils {
         return eventBusOptions;
     }
 
-    public static void createModifiedClusterConfigByPortScanning(String subnetBase, int thirdElementScanRange,
-                                                                 String clusterConfigFileName) {
-        String contents = readClusterConfig(clusterConfigFileName);
+    /**
+     * Sets up mutually authenticated eventbus TLS tuned for heavy cross node traffic. It uses the OpenSSL engine when
+     * netty-tcnative is on the classpath, PEM key material, a server side session cache so reconnects resume instead of
+     * doing full handshakes, and a short list of AEAD cipher suites with hardware accelerated AES.
+     *
+     * @param certPath String, PEM certificate chain of this node
+     * @param keyPath String, PEM private key of this node
+     * @param trustCertPath String, PEM CA certificate of the cluster
+     * @param eventBusOptions EventBusOptions
+     * @return EventBusOptions
+     */
+    public static EventBusOptions setOpenSslEventBus(String certPath, String keyPath, String trustCertPath,
+                                                     EventBusOptions eventBusOptions) {
+        eventBusOptions.setSsl(true);
+        eventBusOptions.setPemKeyCertOptions(new PemKeyCertOptions().setCertPath(certPath).setKeyPath(keyPath));
+        eventBusOptions.setPemTrustOptions(new PemTrustOptions().addCertPath(trustCertPath));
+        eventBusOptions.setClientAuth(ClientAuth.REQUIRED);
+
+        if (OpenSSLEngineOptions.isAvailable()) {
+            eventBusOptions.setOpenSslEngineOptions(new OpenSSLEngineOptions().setSessionCacheEnabled(true));
+        } else {
+            logger.warn("OpenSSL is not available, add netty-tcnative to the classpath! Using JDK SSL engine...");
+        }
 
-        if (contents == null) throw new IllegalArgumentException("Could not load cluster config!");
+        FAST_CIPHER_SUITES.forEach(eventBusOptions::addEnabledCipherSuite);
+
+        return eventBusOptions;
+    }
+
+    /**
+     * Creates a HazelcastClusterManager from the cluster config on the classpath, with the members found by port
+     * scanning injected into its tcp-ip join config.
+     *
+     * @param subnetBase String, e.g. "10.0."
+     * @param thirdElementScanRange int
+     * @param clusterConfigResource String, classpath resource of the base config
+     * @param dev boolean, whether the base config uses the dev interface range
+     * @return HazelcastClusterManager
+     */
+    public static HazelcastClusterManager createClusterManagerByPortScanning(String subnetBase,
+                                                                             int thirdElementScanRange,
+                                                                             String clusterConfigResource,
+                                                                             boolean dev) {
+        return new HazelcastClusterManager(createClusterConfigByPortScanning(
+                subnetBase, thirdElementScanRange, clusterConfigResource, dev, DEFAULT_MEMBER_CACHE));
+    }
+
+    public static Config createClusterConfigByPortScanning(String subnetBase, int thirdElementScanRange,
+                                                           String clusterConfigResource, boolean dev) {
+        return createClusterConfigByPortScanning(subnetBase, thirdElementScanRange, clusterConfigResource, dev,
+                DEFAULT_MEMBER_CACHE);
+    }
+
+    public static Config createClusterConfigByPortScanning(String subnetBase, int thirdElementScanRange,
+                                                           String clusterConfigResource, boolean dev,
+                                                           String memberCacheFileName) {
+        final Config config = loadClusterConfig(clusterConfigResource);
+
+        try {
+            logger.info("Initializing Port Scan!");
+
+            final List<String> members = findClusterMembers(subnetBase, thirdElementScanRange, memberCacheFileName);
+
+            if (members.isEmpty()) {
+                logger.info("Skipping memberlist due to it being empty, doing broad sweep...");
+            } else {
+                logger.info("Finalized Port Scan. Members at: " + members);
+
+                setClusterMembers(config, members, subnetBase + (dev ? "0.0-15" : "0.*"));
+            }
+        } catch (IOException e) {
+            logger.error("Error in finding other services!", e);
+        }
+
+        return config;
+    }
+
+    public static Config loadClusterConfig(String clusterConfigResource) {
+        final ClassLoader classLoader = configClassLoader();
+
+        if (classLoader.getResource(clusterConfigResource) == null) {
+            throw new IllegalArgumentException("Could not load cluster config!");
+        }
+
+        return new ClasspathXmlConfig(classLoader, clusterConfigResource);
+    }
 
-        setClusterMembersForSubnet(subnetBase, thirdElementScanRange, contents, true);
+    private static ClassLoader configClassLoader() {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        return contextClassLoader != null ? contextClassLoader : ClusterUtils.class.getClassLoader();
+    }
+
+    /**
+     * Replaces the broad sweep interface of the tcp-ip join config with concrete members.
+     *
+     * @param config Config
+     * @param members List of String
+     * @param sweepInterface String, the interface range to replace
+     * @return Config
+     */
+    public static Config setClusterMembers(Config config, List<String> members, String sweepInterface) {
+        final TcpIpConfig tcpIpConfig = config.getNetworkConfig().getJoin().getTcpIpConfig();
+        final List<String> configuredMembers = new ArrayList<>(tcpIpConfig.getMembers());
+        configuredMembers.remove(sweepInterface);
+        members.stream().filter(member -> !configuredMembers.contains(member)).forEach(configuredMembers::add);
+
+        tcpIpConfig.setMembers(configuredMembers).setEnabled(true);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+
+        return config;
     }
-    
+
+    /**
+     * @deprecated writes the config to /usr/verticles/cluster-modified.xml, use createClusterManagerByPortScanning
+     */
+    @Deprecated
+    public static void createModifiedClusterConfigByPortScanning(String subnetBase, int thirdElementScanRange,
+                                                                 String clusterConfigFileName) {
+        createModifiedClusterConfigByPortScanning(subnetBase, thirdElementScanRange, clusterConfigFileName, true);
+    }
+
+    /**
+     * @deprecated writes the config to /usr/verticles/cluster-modified.xml, use createClusterManagerByPortScanning
+     */
+    @Deprecated
     public static void createModifiedClusterConfigByPortScanning(String subnetBase, int thirdElementScanRange,
                                                                  String clusterConfigFileName, boolean dev) {
+        createModifiedClusterConfigByPortScanning(subnetBase, thirdElementScanRange, clusterConfigFileName, dev,
+                DEFAULT_MEMBER_CACHE);
+    }
+
+    /**
+     * @deprecated writes the config to /usr/verticles/cluster-modified.xml, use createClusterManagerByPortScanning
+     */
+    @Deprecated
+    public static void createModifiedClusterConfigByPortScanning(String subnetBase, int thirdElementScanRange,
+                                                                 String clusterConfigFileName, boolean dev,
+                                                                 String memberCacheFileName) {
         String contents = readClusterConfig(clusterConfigFileName);
 
         if (contents == null) throw new IllegalArgumentException("Could not load cluster config!");
 
-        setClusterMembersForSubnet(subnetBase, thirdElementScanRange, contents, dev);
+        setClusterMembersForSubnet(subnetBase, thirdElementScanRange, contents, dev, memberCacheFileName);
     }
 
-    private static String readClusterConfig(String clusterConfigFileName) {
-        String fileContents = null;
-
-        try {
-            CodeSource src = ClusterUtils.class.getProtectionDomain().getCodeSource();
+    /**
+     * Keeps the member cache file up to date with the membership of the first Hazelcast instance in this JVM.
+     *
+     * @return String registration id of the MembershipListener, or null if there is no Hazelcast instance
+     */
+    public static String persistClusterMembers() {
+        return persistClusterMembers(DEFAULT_MEMBER_CACHE);
+    }
 
-            if (src != null) {
-                URL jar = src.getLocation();
-                ZipInputStream zip = new ZipInputStream(jar.openStream());
+    public static String persistClusterMembers(String memberCacheFileName) {
+        return Hazelcast.getAllHazelcastInstances().stream().findFirst()
+                .map(hz -> persistClusterMembers(hz, memberCacheFileName))
+                .orElse(null);
+    }
 
-                while (true) {
-                    ZipEntry e = zip.getNextEntry();
+    public static String persistClusterMembers(HazelcastInstance hz, String memberCacheFileName) {
+        writeKnownMembers(memberCacheFileName, hz.getCluster().getMembers());
 
-                    if (e == null)
-                        break;
+        return hz.getCluster().addMembershipListener(new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent) {
+                writeKnownMembers(memberCacheFileName, membershipEvent.getMembers());
+            }
 
-                    if (e.getName().equalsIgnoreCase(clusterConfigFileName)) {
-                        fileContents = readZipInputStream(zip);
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent) {
+                writeKnownMembers(memberCacheFileName, membershipEvent.getMembers());
+            }
 
-                        break;
-                    }
-                }
+            @Override
+            public void memberAttributeChanged(MemberAttributeEvent memberAttributeEvent) {
             }
+        });
+    }
+
+    static void writeKnownMembers(String memberCacheFileName, Set<Member> members) {
+        List<String> hosts = members.stream()
+                .map(member -> {
+                    final String host = member.getSocketAddress().getAddress().getHostAddress();
+
+                    return (host.contains(":") ? "[" + host + "]" : host) + ":" + member.getSocketAddress().getPort();
+                })
+                .distinct()
+                .collect(toList());
+
+        try {
+            Path cache = Paths.get(memberCacheFileName);
+            Path temp = Paths.get(memberCacheFileName + ".tmp");
+
+            Files.write(temp, hosts, StandardCharsets.UTF_8);
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.debug("Persisted " + hosts.size() + " cluster members to " + memberCacheFileName);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Could not persist cluster members!", e);
         }
-
-        return fileContents;
     }
 
-    private static String readZipInputStream(ZipInputStream stream) throws IOException {
-        final StringBuilder sb = new StringBuilder();
-        List<String> lines = IOUtils.readLines(stream);
-        lines.forEach(sb::append);
+    static List<String> readKnownMembers(String memberCacheFileName) {
+        Path cache = Paths.get(memberCacheFileName);
 
-        return sb.toString();
-    }
+        if (!Files.isReadable(cache)) return Collections.emptyList();
 
-    private static void setClusterMembersForSubnet(String subnetBase, int thirdElement, String contents, boolean dev) {
         try {
-            AtomicInteger scans = new AtomicInteger();
-            AtomicInteger scansComplete = new AtomicInteger();
-            StringBuilder replacer = new StringBuilder();
-            List<String> CLUSTER_MEMBER_LIST = new CopyOnWriteArrayList<>();
+            return Files.readAllLines(cache, StandardCharsets.UTF_8).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .collect(toList());
+        } catch (IOException e) {
+            logger.warn("Could not read cluster member cache, ignoring it...", e);
 
-            ExecutorService executorService = Executors.newCachedThreadPool();
+            return Collections.emptyList();
+        }
+    }
 
-            System.out.println("Initializing Port Scan!");
+    private static List<String> findClusterMembers(String subnetBase, int thirdElement, String memberCacheFileName)
+            throws IOException {
+        List<String> knownMembers = readKnownMembers(memberCacheFileName);
 
-            List<Runnable> portScanners = new CopyOnWriteArrayList<>();
+        if (!knownMembers.isEmpty()) {
+            logger.info("Probing " + knownMembers.size() + " last known members...");
 
-            IntStream.rangeClosed(0, thirdElement).parallel().forEach(baseIpInt ->
-                    IntStream.rangeClosed(0, 254).parallel().forEach(lastIpInt -> portScanners.add(() -> {
-                        System.out.println("Now running scan for: " + baseIpInt + "." + lastIpInt);
+            List<String> liveMembers = new PortScanner(HAZELCAST_PORT).scan(knownMembers.iterator(), false);
 
-                        if (CLUSTER_MEMBER_LIST.size() == 0) {
-                            scans.incrementAndGet();
+            if (!liveMembers.isEmpty()) return liveMembers;
 
-                            try (Socket socket = new Socket()) {
-                                socket.connect(
-                                        new InetSocketAddress(subnetBase + baseIpInt + "." + lastIpInt, 5701), 2000);
+            logger.info("No last known members answered, falling back to subnet scan...");
+        }
 
-                                if (socket.isConnected()) {
-                                    CLUSTER_MEMBER_LIST.add("<member>" + subnetBase + baseIpInt + "." +
-                                            lastIpInt + "</member>");
+        Iterator<String> hosts = IntStream.rangeClosed(0, thirdElement).boxed()
+                .flatMap(baseIpInt -> IntStream.rangeClosed(0, 254)
+                        .mapToObj(lastIpInt -> subnetBase + baseIpInt + "." + lastIpInt))
+                .iterator();
 
-                                    System.out.println("Member detected at " + subnetBase + baseIpInt + "." +
-                                            lastIpInt);
-                                }
-                            } catch (IOException e) {
-                                logger.trace("No connection on: " + subnetBase + baseIpInt + "." + lastIpInt);
-                            }
+        return new PortScanner(HAZELCAST_PORT).scan(hosts, true);
+    }
 
-                            scansComplete.incrementAndGet();
-                        }
-                    })));
+    private static String readClusterConfig(String clusterConfigFileName) {
+        InputStream stream = configClassLoader().getResourceAsStream(clusterConfigFileName);
 
-            portScanners.forEach(executorService::submit);
+        if (stream == null) return null;
 
-            executorService.shutdown();
+        try (InputStream configStream = stream) {
+            final StringBuilder sb = new StringBuilder();
+            List<String> lines = IOUtils.readLines(configStream);
+            lines.forEach(sb::append);
 
-            while (!executorService.isTerminated()) {
-                Thread.sleep(2000L);
+            return sb.toString();
+        } catch (IOException e) {
+            logger.error("Could not read cluster config!", e);
 
-                System.out.println("Scan completion Status: (" + scansComplete.get() + "/" + scans.get() + ")");
+            return null;
+        }
+    }
 
-                if (CLUSTER_MEMBER_LIST.size() > 0) {
-                    System.out.println("Scan found at least one member, killing all scanners!");
+    private static void setClusterMembersForSubnet(String subnetBase, int thirdElement, String contents, boolean dev,
+                                                   String memberCacheFileName) {
+        try {
+            StringBuilder replacer = new StringBuilder();
 
-                    executorService.shutdownNow();
+            logger.info("Initializing Port Scan!");
 
-                    break;
-                }
-            }
+            List<String> CLUSTER_MEMBER_LIST = findClusterMembers(subnetBase, thirdElement, memberCacheFileName).stream()
+                    .map(host -> "<member>" + host + "</member>")
+                    .collect(toList());
 
             String clusterConfig = contents;
 
@@ -215,7 +424,7 @@ public class ClusterUtils {
                 replacer.append(CLUSTER_MEMBER_LIST.get(CLUSTER_MEMBER_LIST.size() - 1));
                 String memberOverview = replacer.toString();
 
-                System.out.println("Finalized Port Scan. Members at: " + memberOverview);
+                logger.info("Finalized Port Scan. Members at: " + memberOverview);
 
                 if (dev) {
                     clusterConfig = contents.replace("<interface>" + subnetBase + "0.0-15</interface>", memberOverview);
@@ -223,7 +432,7 @@ public class ClusterUtils {
                     clusterConfig = contents.replace("<interface>" + subnetBase + "0.*</interface>", memberOverview);
                 }
             } else {
-                System.out.println("Skipping memberlist due to it being empty, doing broad sweep...");
+                logger.info("Skipping memberlist due to it being empty, doing broad sweep...");
             }
 
             Path dir = Paths.get("/usr/verticles/cluster-modified.xml");
@@ -239,7 +448,7 @@ public class ClusterUtils {
                 bw.flush();
                 bw.close();
             }
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             logger.error("Error in finding other services!", e);
         }
     }
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryOptions;
+
+/**
+ * This class defines a request deadline that follows a call chain across services and APIs. It is carried as the
+ * remaining budget in milliseconds, so clock skew between nodes does not matter, and is converted to a local
+ * monotonic expiry on arrival.
+ *
+ * The deadline of the request currently being handled is available through current() while a published service
+ * method runs, and any event bus message sent synchronously from that method inherits it.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public final class Deadline {
+    public static final String HEADER = "X-Nannoq-Deadline";
+    public static final int DEADLINE_EXCEEDED = 504;
+
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline in(long millis) {
+        return new Deadline(System.nanoTime() + millis * 1000000L);
+    }
+
+    public static Deadline fromHeaders(MultiMap headers) {
+        if (headers == null) return null;
+
+        final String remaining = headers.get(HEADER);
+
+        if (remaining == null) return null;
+
+        try {
+            return in(Long.parseLong(remaining));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the deadline for the current thread.
+     *
+     * @param deadline Deadline, or null to clear
+     * @return the previous Deadline, to be restored by the caller
+     */
+    public static Deadline setCurrent(Deadline deadline) {
+        final Deadline previous = current.get();
+
+        if (deadline == null) {
+            current.remove();
+        } else {
+            current.set(deadline);
+        }
+
+        return previous;
+    }
+
+    public long remaining() {
+        return Math.max(0L, (expiresAtNanos - System.nanoTime()) / 1000000L);
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    public long cap(long timeout) {
+        return Math.min(timeout, remaining());
+    }
+
+    public Deadline earliest(Deadline other) {
+        if (other == null) return this;
+
+        return expiresAtNanos - other.expiresAtNanos <= 0 ? this : other;
+    }
+
+    public MultiMap writeTo(MultiMap headers) {
+        return headers.set(HEADER, String.valueOf(remaining()));
+    }
+
+    public DeliveryOptions writeTo(DeliveryOptions deliveryOptions) {
+        return deliveryOptions
+                .addHeader(HEADER, String.valueOf(remaining()))
+                .setSendTimeout(Math.max(1L, cap(deliveryOptions.getSendTimeout())));
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining() + "ms}";
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.core.eventbus.EventBusOptions;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * This class defines production tuning for the clustered eventbus transport. TCP_QUICKACK and TCP fast open only take
+ * effect on the native epoll transport, which is preferred when netty-transport-native-epoll is on the classpath.
+ *
+ * Eventbus connections between nodes are long lived, so they are kept open with TCP keepalive instead of an idle
+ * timeout, as a closed connection costs a reconnect, and a full TLS handshake when the eventbus is encrypted. Socket
+ * buffer sizes are left to kernel autotuning unless set explicitly, as a fixed size turns autotuning off.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class EventBusTuning {
+    private static final Logger logger = LoggerFactory.getLogger(EventBusTuning.class.getSimpleName());
+
+    public static VertxOptions tune(VertxOptions vertxOptions) {
+        return tune(vertxOptions, 0);
+    }
+
+    public static VertxOptions tune(VertxOptions vertxOptions, int bufferSize) {
+        vertxOptions.setPreferNativeTransport(true);
+
+        tune(vertxOptions.getEventBusOptions(), bufferSize);
+
+        return vertxOptions;
+    }
+
+    public static EventBusOptions tune(EventBusOptions eventBusOptions) {
+        return tune(eventBusOptions, 0);
+    }
+
+    /**
+     * Tunes the eventbus transport.
+     *
+     * @param eventBusOptions EventBusOptions
+     * @param bufferSize int, socket send and receive buffer size, 0 leaves it to the kernel
+     * @return EventBusOptions
+     */
+    public static EventBusOptions tune(EventBusOptions eventBusOptions, int bufferSize) {
+        logger.info("Tuning eventbus transport" + (bufferSize > 0 ? " with " + bufferSize + " byte buffers" : ""));
+
+        eventBusOptions.setTcpNoDelay(true);
+        eventBusOptions.setTcpQuickAck(true);
+        eventBusOptions.setTcpFastOpen(true);
+        eventBusOptions.setTcpCork(false);
+        eventBusOptions.setTcpKeepAlive(true);
+        eventBusOptions.setIdleTimeout(0);
+        eventBusOptions.setReuseAddress(true);
+        eventBusOptions.setConnectTimeout(2000);
+        eventBusOptions.setReconnectAttempts(5);
+        eventBusOptions.setReconnectInterval(200L);
+
+        if (bufferSize > 0) {
+            eventBusOptions.setSendBufferSize(bufferSize);
+            eventBusOptions.setReceiveBufferSize(bufferSize);
+        }
+
+        return eventBusOptions;
+    }
+}
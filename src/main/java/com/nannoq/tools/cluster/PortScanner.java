@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class defines a selector based TCP port scanner. It keeps a bounded window of non-blocking connects in flight
+ * on the calling thread, instead of blocking one thread per address.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class PortScanner {
+    private static final Logger logger = LoggerFactory.getLogger(PortScanner.class.getSimpleName());
+
+    static final int DEFAULT_WINDOW = 2048;
+    static final long DEFAULT_CONNECT_TIMEOUT = 200L;
+
+    private static final int OPEN = 0;
+    private static final int PENDING = 1;
+    private static final int FAILED = 2;
+
+    private final int port;
+    private final int window;
+    private final long connectTimeout;
+
+    PortScanner(int port) {
+        this(port, DEFAULT_WINDOW, DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    PortScanner(int port, int window, long connectTimeout) {
+        this.port = port;
+        this.window = window;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Scans the hosts for an open port. A host given as "host:port", or "[host]:port" for IPv6, is probed on its own
+     * port instead of the port of the scanner.
+     *
+     * @param hosts Iterator of String, consumed lazily as the window frees up
+     * @param stopOnFirst boolean, return as soon as one host answers
+     * @return List of String of the hosts that answered
+     * @throws IOException if the selector cannot be opened
+     */
+    List<String> scan(Iterator<String> hosts, boolean stopOnFirst) throws IOException {
+        final List<String> found = new ArrayList<>();
+        int pending = 0;
+        String deferred = null;
+
+        final Selector selector = Selector.open();
+
+        try {
+            while (true) {
+                while (pending < window && (deferred != null || hosts.hasNext())) {
+                    final String host = deferred != null ? deferred : hosts.next();
+                    deferred = null;
+
+                    try {
+                        final int state = connect(selector, host);
+
+                        if (state == OPEN) {
+                            found.add(host);
+
+                            if (stopOnFirst) return found;
+                        } else if (state == PENDING) {
+                            pending++;
+                        }
+                    } catch (IOException e) {
+                        if (pending > 0) {
+                            logger.trace("Deferring " + host + " until the window frees up: " + e.getMessage());
+
+                            deferred = host;
+
+                            break;
+                        }
+
+                        logger.trace("Could not scan " + host + ": " + e.getMessage());
+                    }
+                }
+
+                if (pending == 0) return found;
+
+                selector.select(Math.max(1L, connectTimeout / 4));
+
+                final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+
+                while (selected.hasNext()) {
+                    final SelectionKey key = selected.next();
+                    selected.remove();
+
+                    final Attempt attempt = (Attempt) key.attachment();
+
+                    if (finishConnect(key)) {
+                        logger.debug("Port open on " + attempt.host);
+
+                        found.add(attempt.host);
+
+                        if (stopOnFirst) return found;
+                    }
+
+                    pending--;
+                }
+
+                final long now = System.currentTimeMillis();
+
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && ((Attempt) key.attachment()).expiresAt <= now) {
+                        close(key);
+                        pending--;
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+
+            selector.close();
+
+            logger.debug("Scan finished with " + found.size() + " hosts answering on " + port);
+        }
+    }
+
+    private int connect(Selector selector, String host) throws IOException {
+        final InetSocketAddress address;
+
+        try {
+            address = address(host);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Skipping malformed address " + host + ": " + e.getMessage());
+
+            return FAILED;
+        }
+
+        final SocketChannel channel = SocketChannel.open();
+
+        try {
+            channel.configureBlocking(false);
+
+            if (channel.connect(address)) {
+                channel.close();
+
+                return OPEN;
+            }
+
+            channel.register(selector, SelectionKey.OP_CONNECT,
+                    new Attempt(host, System.currentTimeMillis() + connectTimeout));
+
+            return PENDING;
+        } catch (IllegalArgumentException | ConnectException e) {
+            channel.close();
+
+            return FAILED;
+        } catch (IOException e) {
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException on a malformed or out of range port, NumberFormatException included
+     */
+    private InetSocketAddress address(String host) {
+        if (host.startsWith("[")) {
+            final int end = host.indexOf(']');
+
+            if (end > 0 && host.startsWith(":", end + 1)) {
+                return new InetSocketAddress(host.substring(1, end), Integer.parseInt(host.substring(end + 2)));
+            }
+
+            return new InetSocketAddress(host.substring(1, end < 0 ? host.length() : end), port);
+        }
+
+        final int separator = host.indexOf(':');
+
+        if (separator > 0 && separator == host.lastIndexOf(':')) {
+            return new InetSocketAddress(host.substring(0, separator), Integer.parseInt(host.substring(separator + 1)));
+        }
+
+        return new InetSocketAddress(host, port);
+    }
+
+    private boolean finishConnect(SelectionKey key) {
+        try {
+            return ((SocketChannel) key.channel()).finishConnect();
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.trace("Error closing scan channel", e);
+        }
+    }
+
+    private static class Attempt {
+        private final String host;
+        private final long expiresAt;
+
+        private Attempt(String host, long expiresAt) {
+            this.host = host;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -25,9 +25,13 @@
 
 package com.nannoq.tools.cluster.apis;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class defines an interface used to define the routing of internal or external hosts on the specific environment
- * you are running. It is expected by the ApiManager.
+ * you are running. It is expected by the ApiManager. Producers that return endpoints get records balanced across all of
+ * them on the client side, instead of a single host.
  *
  * @author Anders Mikkelsen
  * @version 17.11.2017
@@ -35,4 +39,12 @@ package com.nannoq.tools.cluster.apis;
 public interface APIHostProducer {
     String getInternalHost(String name);
     String getExternalHost(String name);
+
+    default List<ApiEndpoint> getInternalEndpoints(String name) {
+        return Collections.emptyList();
+    }
+
+    default List<ApiEndpoint> getExternalEndpoints(String name) {
+        return Collections.emptyList();
+    }
 }
@@ -26,19 +26,27 @@
 package com.nannoq.tools.cluster.apis;
 
 import com.nannoq.tools.cluster.CircuitBreakerUtils;
+import com.nannoq.tools.cluster.Deadline;
+import com.nannoq.tools.cluster.services.ServiceManager;
+import com.nannoq.tools.cluster.tracing.TraceContext;
 import io.vertx.circuitbreaker.CircuitBreaker;
 import io.vertx.circuitbreaker.CircuitBreakerOptions;
 import io.vertx.core.*;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.servicediscovery.Record;
 import io.vertx.servicediscovery.types.HttpEndpoint;
+import io.vertx.serviceproxy.ServiceException;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
@@ -54,10 +62,17 @@ public class APIManager {
     private static final String GENERIC_HTTP_REQUEST_CIRCUITBREAKER = "com.apis.generic.circuitbreaker";
     private static final String API_CIRCUIT_BREAKER_BASE = "com.apis.circuitbreaker.";
 
+    private static final long DEFAULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_CACHE_TTL = 30000L;
+    private static final long DEFAULT_CACHE_MAX_STALE = 60000L * 5;
+
     private final Vertx vertx;
     private final APIHostProducer apiHostProducer;
     private Map<String, CircuitBreaker> circuitBreakerMap;
     private Map<String, MessageConsumer<JsonObject>> circuitBreakerMessageConsumerMap;
+    private final ResponseCache responseCache;
+    private final Set<String> revalidating;
+    private final long cacheTtl;
 
     private String publicHost, privateHost;
 
@@ -82,6 +97,12 @@ public class APIManager {
         publicHost = appConfig.getString("publicHost");
         privateHost = appConfig.getString("privateHost");
 
+        cacheTtl = appConfig.getLong("apiCacheTtl", DEFAULT_CACHE_TTL);
+        responseCache = new ResponseCache(
+                appConfig.getLong("apiCacheMaxBytes", DEFAULT_CACHE_MAX_BYTES),
+                appConfig.getLong("apiCacheMaxStale", DEFAULT_CACHE_MAX_STALE));
+        revalidating = ConcurrentHashMap.newKeySet();
+
         vertx.deployVerticle(new KillVerticle());
     }
 
@@ -141,6 +162,25 @@ public class APIManager {
                 prepareCircuitBreaker(path), resultHandler, handler, fallback);
     }
 
+    /**
+     * Performs the request within the remaining budget of the deadline. Use Deadline.writeTo on the outgoing request
+     * headers to pass the budget on to the API.
+     *
+     * @param path String
+     * @param deadline Deadline
+     * @param resultHandler Handler of AsyncResult of T
+     * @param handler Handler of Future of T
+     * @param fallback Consumer of Throwable
+     * @param <T> Result type
+     */
+    public <T> void performRequestWithCircuitBreaker(String path, Deadline deadline,
+                                                     Handler<AsyncResult<T>> resultHandler,
+                                                     Handler<Future<T>> handler,
+                                                     Consumer<Throwable> fallback) {
+        CircuitBreakerUtils.performRequestWithCircuitBreaker(
+                vertx, prepareCircuitBreaker(path), deadline, resultHandler, handler, fallback);
+    }
+
     public static <T> void performRequestWithCircuitBreaker(Handler<AsyncResult<T>> resultHandler,
                                                             Handler<Future<T>> handler,
                                                             Consumer<Throwable> fallback) {
@@ -155,11 +195,159 @@ public class APIManager {
                 resultHandler, handler, fallback);
     }
 
+    /**
+     * Performs a cached GET against the API with this name. Fresh entries are returned directly, stale entries are
+     * returned while a background revalidation with If-None-Match runs, and stale entries are used as the fallback
+     * when the circuitbreaker for the API is open.
+     *
+     * @param api String
+     * @param uri String
+     * @param resultHandler Handler of AsyncResult of Buffer
+     */
+    public void performCachedRequest(String api, String uri, Handler<AsyncResult<Buffer>> resultHandler) {
+        final String key = ResponseCache.key(api, uri);
+        final ResponseCache.Entry cached = responseCache.get(key);
+
+        if (cached != null && cached.isFresh()) {
+            resultHandler.handle(Future.succeededFuture(cached.getBody()));
+        } else if (cached != null && cached.isServableStale()) {
+            resultHandler.handle(Future.succeededFuture(cached.getBody()));
+
+            if (revalidating.add(key)) {
+                fetchAndCache(api, uri, key, cached, res -> {
+                    revalidating.remove(key);
+
+                    if (res.failed()) logger.debug("Background revalidation failed for " + key + ": " + res.cause());
+                });
+            }
+        } else {
+            fetchAndCache(api, uri, key, cached, resultHandler);
+        }
+    }
+
+    public void invalidateCachedRequest(String api, String uri) {
+        responseCache.invalidate(ResponseCache.key(api, uri));
+    }
+
+    private void fetchAndCache(String api, String uri, String key, ResponseCache.Entry cached,
+                               Handler<AsyncResult<Buffer>> resultHandler) {
+        final TraceContext traceContext = TraceContext.current();
+
+        performRequestWithCircuitBreaker(api, resultHandler, fut ->
+                ServiceManager.getInstance(vertx).consumeApi(api, clientRes -> {
+                    if (clientRes.failed()) {
+                        fut.tryFail(clientRes.cause());
+                    } else {
+                        HttpClientRequest request = clientRes.result().get(uri, response ->
+                                handleCacheableResponse(key, cached, response, fut));
+
+                        if (cached != null && cached.getEtag() != null) {
+                            request.putHeader("If-None-Match", cached.getEtag());
+                        }
+
+                        if (traceContext != null) traceContext.writeTo(request.headers());
+
+                        request.exceptionHandler(fut::tryFail);
+                        request.end();
+                    }
+                }), throwable -> {
+            if (cached != null && cached.isServableStale()) {
+                logger.debug("Serving stale response for " + key + " due to: " + throwable);
+
+                resultHandler.handle(Future.succeededFuture(cached.getBody()));
+            } else if (throwable instanceof UpstreamFailure) {
+                resultHandler.handle(ServiceException.fail(
+                        ((UpstreamFailure) throwable).statusCode, throwable.getMessage()));
+            } else {
+                resultHandler.handle(Future.failedFuture(throwable));
+            }
+        });
+    }
+
+    private void handleCacheableResponse(String key, ResponseCache.Entry cached, HttpClientResponse response,
+                                         Future<Buffer> fut) {
+        final String cacheControl = response.getHeader("Cache-Control");
+
+        if (response.statusCode() == 304 && cached != null) {
+            responseCache.revalidated(key, getTtl(cacheControl));
+            fut.tryComplete(cached.getBody());
+        } else if (response.statusCode() == 200) {
+            response.bodyHandler(body -> {
+                if (hasDirective(cacheControl, "no-store") || hasDirective(cacheControl, "private")) {
+                    responseCache.invalidate(key);
+                } else {
+                    responseCache.put(key, response.getHeader("ETag"), body, getTtl(cacheControl),
+                            hasDirective(cacheControl, "no-cache"));
+                }
+
+                fut.tryComplete(body);
+            });
+            response.exceptionHandler(fut::tryFail);
+        } else if (response.statusCode() >= 500) {
+            fut.tryFail(new UpstreamFailure(response.statusCode(), response.statusMessage()));
+        } else {
+            fut.tryFail(new ServiceException(response.statusCode(), response.statusMessage()));
+        }
+    }
+
+    private long getTtl(String cacheControl) {
+        if (cacheControl != null) {
+            if (hasDirective(cacheControl, "no-cache")) return 0L;
+
+            for (String directive : cacheControl.split(",")) {
+                final String trimmed = directive.trim();
+
+                if (trimmed.startsWith("max-age=")) {
+                    try {
+                        return Long.parseLong(trimmed.substring("max-age=".length())) * 1000L;
+                    } catch (NumberFormatException e) {
+                        logger.debug("Invalid max-age: " + trimmed);
+                    }
+                }
+            }
+        }
+
+        return cacheTtl;
+    }
+
+    private static boolean hasDirective(String cacheControl, String name) {
+        if (cacheControl == null) return false;
+
+        for (String directive : cacheControl.split(",")) {
+            final String trimmed = directive.trim();
+
+            if (trimmed.equalsIgnoreCase(name) || trimmed.toLowerCase().startsWith(name + "=")) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Server errors are reported to the circuitbreaker as a regular failure rather than a ServiceException, so they
+     * count towards opening it and reach the fallback, where a stale copy can be served instead.
+     */
+    private static class UpstreamFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        private UpstreamFailure(int statusCode, String statusMessage) {
+            super(statusMessage == null ? "HTTP " + statusCode : statusMessage, null, false, false);
+            this.statusCode = statusCode;
+        }
+    }
+
     public Record createInternalApiRecord(String name, String path) {
         return createInternalApiRecord(name, path, true);
     }
 
     public Record createInternalApiRecord(String name, String path, boolean ssl) {
+        if (apiHostProducer != null) {
+            final List<ApiEndpoint> endpoints = apiHostProducer.getInternalEndpoints(name);
+
+            if (endpoints != null && !endpoints.isEmpty()) return createApiRecord(name, path, ssl, endpoints);
+        }
+
         return HttpEndpoint.createRecord(name, ssl,
                 apiHostProducer == null ? privateHost : apiHostProducer.getInternalHost(name), ssl ? 443 : 80, path, null);
     }
@@ -169,7 +357,33 @@ public class APIManager {
     }
 
     public Record createExternalApiRecord(String name, String path, boolean ssl) {
+        if (apiHostProducer != null) {
+            final List<ApiEndpoint> endpoints = apiHostProducer.getExternalEndpoints(name);
+
+            if (endpoints != null && !endpoints.isEmpty()) return createApiRecord(name, path, ssl, endpoints);
+        }
+
         return HttpEndpoint.createRecord(name, ssl,
                 apiHostProducer == null ? publicHost : apiHostProducer.getExternalHost(name), ssl ? 443 : 80, path, null);
     }
+
+    /**
+     * Creates a record carrying several weighted endpoints. The first endpoint is kept as the regular host and port of
+     * the record, so consumers unaware of the endpoint list still resolve a working client.
+     *
+     * @param name String
+     * @param path String
+     * @param ssl boolean
+     * @param endpoints List of ApiEndpoint
+     * @return Record
+     */
+    public Record createApiRecord(String name, String path, boolean ssl, List<ApiEndpoint> endpoints) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("At least one endpoint is required!");
+
+        final ApiEndpoint first = endpoints.get(0);
+        final Record record = HttpEndpoint.createRecord(name, ssl, first.getHost(), first.getPort(), path, null);
+        record.getLocation().put(ApiEndpoint.ENDPOINTS_KEY, ApiEndpoint.toJsonArray(endpoints));
+
+        return record;
+    }
 }
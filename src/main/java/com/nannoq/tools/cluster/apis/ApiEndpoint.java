@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.apis;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class defines a single host:port endpoint of an API, with a relative weight used for client-side balancing.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ApiEndpoint {
+    public static final String ENDPOINTS_KEY = "endpoints";
+
+    private final String host;
+    private final int port;
+    private final int weight;
+
+    public ApiEndpoint(String host, int port) {
+        this(host, port, 1);
+    }
+
+    public ApiEndpoint(String host, int port, int weight) {
+        if (weight < 1) throw new IllegalArgumentException("Weight must be positive!");
+
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+    }
+
+    public ApiEndpoint(JsonObject json) {
+        this(required(json.getString("host"), "host"), required(json.getInteger("port"), "port"),
+                json.getInteger("weight", 1));
+    }
+
+    private static <T> T required(T value, String field) {
+        if (value == null) throw new IllegalArgumentException("Endpoint " + field + " is required!");
+
+        return value;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("host", host)
+                .put("port", port)
+                .put("weight", weight);
+    }
+
+    public static JsonArray toJsonArray(List<ApiEndpoint> endpoints) {
+        JsonArray array = new JsonArray();
+        endpoints.forEach(endpoint -> array.add(endpoint.toJson()));
+
+        return array;
+    }
+
+    public static List<ApiEndpoint> fromJsonArray(JsonArray array) {
+        List<ApiEndpoint> endpoints = new ArrayList<>();
+        array.forEach(json -> endpoints.add(new ApiEndpoint((JsonObject) json)));
+
+        return endpoints;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.apis;
+
+import com.nannoq.tools.cluster.Deadline;
+import com.nannoq.tools.cluster.services.ServiceManager;
+import com.nannoq.tools.cluster.tracing.TraceContext;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.Pump;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.serviceproxy.ServiceException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class defines a gateway verticle that proxies HTTP requests to APIs resolved through the ServiceManager. Routes
+ * are read from the gatewayRoutes config object, mapping a path prefix to an API name, and the prefix is stripped
+ * before the request is forwarded. Request and response bodies are pumped between the connections with back-pressure
+ * and never buffered in full, and every API is called through its APIManager circuitbreaker, which judges the call
+ * by the upstream status line so long running responses are not cut short by its timeout. The remaining deadline and
+ * trace context are passed on to the API.
+ *
+ * Config keys are gatewayPort (8080), gatewayRoutes, and the keys read by the APIManager.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ApiGatewayVerticle extends AbstractVerticle {
+    private static final Logger logger = LoggerFactory.getLogger(ApiGatewayVerticle.class.getSimpleName());
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int BAD_GATEWAY = 502;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "host"));
+
+    private APIManager apiManager;
+    private HttpServer server;
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        apiManager = new APIManager(vertx, config());
+
+        final JsonObject routes = config().getJsonObject("gatewayRoutes", new JsonObject());
+        final Router router = Router.router(vertx);
+
+        routes.fieldNames().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .forEach(prefix -> {
+                    final String api = routes.getString(prefix);
+
+                    logger.info("Routing " + prefix + " to " + api);
+
+                    router.route(prefix + "/*").handler(routingContext -> proxy(routingContext, prefix, api));
+                });
+
+        final int port = config().getInteger("gatewayPort", DEFAULT_PORT);
+
+        server = vertx.createHttpServer(new HttpServerOptions().setPort(port))
+                .requestHandler(router::accept)
+                .listen(listenResult -> {
+                    if (listenResult.failed()) {
+                        startFuture.fail(listenResult.cause());
+                    } else {
+                        logger.info("Gateway listening on " + listenResult.result().actualPort());
+
+                        startFuture.complete();
+                    }
+                });
+    }
+
+    @Override
+    public void stop(Future<Void> stopFuture) throws Exception {
+        if (server == null) {
+            stopFuture.complete();
+        } else {
+            server.close(stopFuture.completer());
+        }
+    }
+
+    private void proxy(RoutingContext routingContext, String prefix, String api) {
+        final HttpServerRequest request = routingContext.request();
+        final HttpServerResponse response = request.response();
+        final String remainder = request.uri().substring(prefix.length());
+        final String uri = remainder.startsWith("/") ? remainder : "/" + remainder;
+        final AtomicBoolean relaying = new AtomicBoolean();
+        final AtomicReference<HttpClientRequest> upstream = new AtomicReference<>();
+
+        request.pause();
+
+        apiManager.<Void>performRequestWithCircuitBreaker(api, Deadline.fromHeaders(request.headers()), res -> {
+            if (res.failed() && !relaying.get()) {
+                abandon(request, upstream.get());
+                response.setStatusCode(res.cause() instanceof ServiceException ?
+                        ((ServiceException) res.cause()).failureCode() : BAD_GATEWAY).end();
+            }
+        }, operation -> forward(request, api, uri, operation, relaying, upstream), throwable -> {
+            logger.debug("Gateway fallback for " + api + ": " + throwable);
+
+            if (relaying.get()) {
+                response.close();
+            } else {
+                abandon(request, upstream.get());
+                response.setStatusCode(SERVICE_UNAVAILABLE).end();
+            }
+        });
+    }
+
+    private void forward(HttpServerRequest request, String api, String uri, Future<Void> operation,
+                         AtomicBoolean relaying, AtomicReference<HttpClientRequest> upstreamRequest) {
+        final Deadline deadline = Deadline.current();
+        final TraceContext traceContext = TraceContext.current();
+
+        ServiceManager.getInstance(vertx).consumeApi(api, clientResult -> {
+            if (clientResult.failed()) {
+                operation.tryFail(clientResult.cause());
+
+                return;
+            }
+
+            if (operation.isComplete()) return;
+
+            final HttpClientRequest upstream = clientResult.result().request(request.method(), uri, upstreamResponse ->
+                    relay(request, upstreamResponse, operation, relaying, upstreamRequest.get()));
+
+            upstreamRequest.set(upstream);
+
+            copyHeaders(request.headers(), upstream.headers());
+
+            if (!request.headers().contains("Content-Length") &&
+                    "chunked".equalsIgnoreCase(request.getHeader("Transfer-Encoding"))) {
+                upstream.setChunked(true);
+            }
+
+            if (deadline != null) deadline.writeTo(upstream.headers());
+            if (traceContext != null) traceContext.writeTo(upstream.headers());
+
+            upstream.exceptionHandler(throwable -> failOrClose(request, operation, relaying, throwable));
+            request.exceptionHandler(throwable -> failOrClose(request, operation, relaying, throwable));
+            request.endHandler(v -> upstream.end());
+
+            Pump.pump(request, upstream).start();
+            request.resume();
+        });
+    }
+
+    /**
+     * Relays the upstream response. The operation is settled as soon as the status line and headers arrive, so the
+     * circuitbreaker sees upstream failures but not the time spent streaming the body, which is relayed afterwards.
+     */
+    private void relay(HttpServerRequest request, HttpClientResponse upstreamResponse, Future<Void> operation,
+                       AtomicBoolean relaying, HttpClientRequest upstream) {
+        final HttpServerResponse response = request.response();
+
+        if (operation.isComplete() || response.ended()) {
+            abandon(request, upstream);
+
+            return;
+        }
+
+        final int statusCode = upstreamResponse.statusCode();
+
+        response.setStatusCode(statusCode).setStatusMessage(upstreamResponse.statusMessage());
+        copyHeaders(upstreamResponse.headers(), response.headers());
+
+        if (!upstreamResponse.headers().contains("Content-Length") && statusCode != 204 && statusCode != 304) {
+            response.setChunked(true);
+        }
+
+        relaying.set(true);
+
+        upstreamResponse.exceptionHandler(throwable -> failOrClose(request, operation, relaying, throwable));
+        upstreamResponse.endHandler(v -> response.end());
+
+        Pump.pump(upstreamResponse, response).start();
+
+        if (statusCode >= 500) {
+            operation.tryFail(new ServiceException(statusCode, "Upstream failed with " + statusCode));
+        } else {
+            operation.tryComplete();
+        }
+    }
+
+    private static void failOrClose(HttpServerRequest request, Future<Void> operation, AtomicBoolean relaying,
+                                    Throwable throwable) {
+        if (relaying.get()) {
+            logger.debug("Closing relayed response: " + throwable);
+
+            request.response().close();
+        } else {
+            operation.tryFail(throwable);
+        }
+    }
+
+    /**
+     * Stops forwarding a request the client has already been answered for, resetting the upstream request so it does
+     * not keep running and its late response is never relayed.
+     */
+    private static void abandon(HttpServerRequest request, HttpClientRequest upstream) {
+        if (upstream == null) return;
+
+        request.handler(null);
+        request.endHandler(null);
+        upstream.reset();
+    }
+
+    private static void copyHeaders(MultiMap from, MultiMap to) {
+        from.forEach(header -> {
+            if (!HOP_BY_HOP_HEADERS.contains(header.getKey().toLowerCase())) to.add(header.getKey(), header.getValue());
+        });
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.apis;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class defines a size bounded LRU cache for HTTP responses fetched through the APIManager. Bodies are kept in
+ * direct buffers outside of the heap, while entries keep their ETag and expiry for revalidation.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class.getSimpleName());
+
+    private final long maxBytes;
+    private final long maxStale;
+    private final LinkedHashMap<String, Entry> entries;
+    private long usedBytes;
+
+    public ResponseCache(long maxBytes, long maxStale) {
+        this.maxBytes = maxBytes;
+        this.maxStale = maxStale;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    public static String key(String api, String uri) {
+        return api + ":" + uri;
+    }
+
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized Entry put(String key, String etag, Buffer body, long ttl) {
+        return put(key, etag, body, ttl, false);
+    }
+
+    /**
+     * Caches the body under the key. Entries that must be revalidated are never served stale, neither while
+     * revalidating nor as a fallback.
+     *
+     * @param key String
+     * @param etag String
+     * @param body Buffer
+     * @param ttl long
+     * @param mustRevalidate boolean
+     * @return Entry, or null if the body does not fit in the cache
+     */
+    public synchronized Entry put(String key, String etag, Buffer body, long ttl, boolean mustRevalidate) {
+        final int size = body.length();
+
+        if (size > maxBytes) {
+            logger.debug("Response for " + key + " exceeds cache size, skipping...");
+
+            return null;
+        }
+
+        invalidate(key);
+
+        ByteBuffer offHeap = ByteBuffer.allocateDirect(size);
+        offHeap.put(body.getBytes());
+        offHeap.flip();
+
+        Entry entry = new Entry(etag, offHeap, System.currentTimeMillis() + ttl, mustRevalidate);
+        entries.put(key, entry);
+        usedBytes += size;
+
+        evict();
+
+        return entry;
+    }
+
+    /**
+     * Marks the entry as confirmed by the origin for another ttl. Entries that must be revalidated stay expired, so
+     * they are checked with the origin again on the next request.
+     *
+     * @param key String
+     * @param ttl long
+     */
+    public synchronized void revalidated(String key, long ttl) {
+        final Entry entry = entries.get(key);
+
+        if (entry != null) entry.expiresAt = System.currentTimeMillis() + (entry.mustRevalidate ? 0L : ttl);
+    }
+
+    public synchronized void invalidate(String key) {
+        final Entry removed = entries.remove(key);
+
+        if (removed != null) usedBytes -= removed.size();
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().getValue().size();
+            iterator.remove();
+        }
+    }
+
+    public class Entry {
+        private final String etag;
+        private final ByteBuffer body;
+        private final boolean mustRevalidate;
+        private volatile long expiresAt;
+
+        private Entry(String etag, ByteBuffer body, long expiresAt, boolean mustRevalidate) {
+            this.etag = etag;
+            this.body = body;
+            this.expiresAt = expiresAt;
+            this.mustRevalidate = mustRevalidate;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public Buffer getBody() {
+            ByteBuffer view = body.duplicate();
+            byte[] bytes = new byte[view.remaining()];
+            view.get(bytes);
+
+            return Buffer.buffer(bytes);
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+
+        public boolean isServableStale() {
+            return !mustRevalidate && System.currentTimeMillis() < expiresAt + maxStale;
+        }
+
+        private int size() {
+            return body.capacity();
+        }
+    }
+}
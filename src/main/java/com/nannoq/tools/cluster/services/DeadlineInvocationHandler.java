@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import com.nannoq.tools.cluster.Deadline;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.serviceproxy.ServiceException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class defines a consumer side wrapper for service proxies that binds every call to a deadline. Calls made after
+ * the deadline fail immediately, the deadline is sent along with the request, and the result handler is failed when
+ * the remaining budget runs out, whichever of the event bus timeout or the deadline comes first.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class DeadlineInvocationHandler implements InvocationHandler {
+    private final Vertx vertx;
+    private final Object target;
+    private final String serviceName;
+    private final Deadline deadline;
+
+    private DeadlineInvocationHandler(Vertx vertx, Object target, String serviceName, Deadline deadline) {
+        this.vertx = vertx;
+        this.target = target;
+        this.serviceName = serviceName;
+        this.deadline = deadline;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T wrap(Vertx vertx, Class<T> type, T target, String serviceName, Deadline deadline) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new DeadlineInvocationHandler(vertx, target, serviceName, deadline));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) return method.invoke(target, args);
+
+        final int handlerIndex = args == null ? -1 : args.length - 1;
+
+        if (handlerIndex >= 0 && args[handlerIndex] instanceof Handler) {
+            final Handler<AsyncResult<Object>> resultHandler = (Handler<AsyncResult<Object>>) args[handlerIndex];
+
+            if (deadline.isExpired()) {
+                resultHandler.handle(ServiceException.fail(Deadline.DEADLINE_EXCEEDED,
+                        "Deadline exceeded before calling " + serviceName + "." + method.getName()));
+
+                return method.getReturnType().isInstance(proxy) ? proxy : null;
+            }
+
+            final AtomicBoolean done = new AtomicBoolean();
+            final long timerId = vertx.setTimer(Math.max(1L, deadline.remaining()), id -> {
+                if (done.compareAndSet(false, true)) {
+                    resultHandler.handle(ServiceException.fail(Deadline.DEADLINE_EXCEEDED,
+                            "Deadline exceeded while calling " + serviceName + "." + method.getName()));
+                }
+            });
+
+            args[handlerIndex] = (Handler<AsyncResult<Object>>) res -> {
+                if (done.compareAndSet(false, true)) {
+                    vertx.cancelTimer(timerId);
+                    resultHandler.handle(res);
+                }
+            };
+        }
+
+        final Deadline previous = Deadline.setCurrent(deadline);
+
+        try {
+            final Object result = method.invoke(target, args);
+
+            return result == target ? proxy : result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            Deadline.setCurrent(previous);
+        }
+    }
+}
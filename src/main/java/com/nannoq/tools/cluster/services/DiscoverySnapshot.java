@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * This class defines a local, memory mapped snapshot of the records a node consumes. It is written periodically by the
+ * ServiceManager and read on boot to prewarm consumer caches before discovery has been queried. Records are stored
+ * under the name they were consumed by, which differs from the record name for services looked up by interface.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class DiscoverySnapshot {
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 8;
+    private static final String CONSUMED_KEY = "consumed";
+
+    private final Path file;
+
+    DiscoverySnapshot(Path file) {
+        this.file = file;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    void write(Map<String, List<Record>> consumed) throws IOException {
+        final JsonObject byName = new JsonObject();
+        consumed.forEach((name, records) ->
+                byName.put(name, new JsonArray(records.stream().map(Record::toJson).collect(toList()))));
+
+        final byte[] bytes = new JsonObject()
+                .put(CONSUMED_KEY, byName)
+                .encode()
+                .getBytes(StandardCharsets.UTF_8);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + bytes.length);
+            buffer.putInt(VERSION).putInt(bytes.length).put(bytes);
+            buffer.force();
+        }
+
+        Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot, returning the records by the name they were consumed by. A missing, truncated or foreign file
+     * yields an empty map.
+     *
+     * @return Map of consumed name to List of Record
+     * @throws IOException on read failures
+     */
+    Map<String, List<Record>> read() throws IOException {
+        final Map<String, List<Record>> consumed = new HashMap<>();
+
+        if (!Files.isRegularFile(file)) return consumed;
+
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() < HEADER_BYTES) return consumed;
+
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != VERSION) return consumed;
+
+            final int length = buffer.getInt();
+
+            if (length < 0 || length > buffer.remaining()) return consumed;
+
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+
+            final JsonObject byName = new JsonObject(new String(bytes, StandardCharsets.UTF_8))
+                    .getJsonObject(CONSUMED_KEY, new JsonObject());
+
+            for (String name : byName.fieldNames()) {
+                final List<Record> records = new ArrayList<>();
+                byName.getJsonArray(name).forEach(record -> records.add(new Record((JsonObject) record)));
+                consumed.put(name, records);
+            }
+
+            return consumed;
+        } catch (DecodeException | ClassCastException e) {
+            return new HashMap<>();
+        }
+    }
+}
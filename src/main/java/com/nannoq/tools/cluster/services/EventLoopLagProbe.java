@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+/**
+ * This class defines a timer drift probe for a single event loop. A timer is scheduled on the context of the loop,
+ * and the time it fires later than asked is the time tasks currently wait in the queue of that loop.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class EventLoopLagProbe {
+    public static final long DEFAULT_INTERVAL = 100L;
+
+    private final Vertx vertx;
+    private final long interval;
+    private volatile long lagMillis;
+    private volatile long timerId = -1L;
+    private volatile boolean running;
+
+    public EventLoopLagProbe(Vertx vertx, long interval) {
+        this.vertx = vertx;
+        this.interval = interval;
+    }
+
+    public EventLoopLagProbe start(Context context) {
+        running = true;
+        context.runOnContext(v -> schedule());
+
+        return this;
+    }
+
+    private void schedule() {
+        final long scheduledAt = System.nanoTime();
+
+        timerId = vertx.setTimer(interval, id -> {
+            lagMillis = Math.max(0L, (System.nanoTime() - scheduledAt) / 1000000L - interval);
+
+            if (running) schedule();
+        });
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public void stop() {
+        running = false;
+
+        if (timerId != -1L) vertx.cancelTimer(timerId);
+    }
+}
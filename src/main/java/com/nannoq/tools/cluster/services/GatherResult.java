@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class defines the aggregated outcome of a scatter-gather call, keyed on the instance address of each instance
+ * that was invoked. Instances that failed or did not answer within the per instance timeout are reported separately,
+ * so partial results remain usable.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class GatherResult<R> {
+    private final Map<String, R> results = new LinkedHashMap<>();
+    private final Map<String, Throwable> failures = new LinkedHashMap<>();
+
+    void succeeded(String instance, R result) {
+        results.put(instance, result);
+    }
+
+    void failed(String instance, Throwable cause) {
+        failures.put(instance, cause);
+    }
+
+    public Map<String, R> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public Set<String> getInstances() {
+        final Set<String> instances = new LinkedHashSet<>(results.keySet());
+        instances.addAll(failures.keySet());
+
+        return Collections.unmodifiableSet(instances);
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+}
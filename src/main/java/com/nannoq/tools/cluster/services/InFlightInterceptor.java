@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class defines an interceptor that counts unanswered calls per side and service. When created with a limit it
+ * also acts as a quota, rejecting calls with 429 while the limit is reached.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class InFlightInterceptor implements ServiceInterceptor {
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final int maxInFlight;
+
+    public InFlightInterceptor() {
+        this(0);
+    }
+
+    /**
+     * @param maxInFlight int, limit per side and service, 0 for no limit
+     */
+    public InFlightInterceptor(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void intercept(ServiceInvocation invocation) {
+        final AtomicInteger counter = inFlight.computeIfAbsent(
+                invocation.getSide() + ":" + invocation.getServiceName(), k -> new AtomicInteger());
+
+        if (maxInFlight > 0 && counter.incrementAndGet() > maxInFlight) {
+            counter.decrementAndGet();
+            invocation.fail(TOO_MANY_REQUESTS, invocation.getServiceName() + " has " + maxInFlight +
+                    " calls in flight");
+
+            return;
+        } else if (maxInFlight <= 0) {
+            counter.incrementAndGet();
+        }
+
+        invocation.endHandler(res -> counter.decrementAndGet());
+        invocation.proceed();
+    }
+
+    public int getInFlight(ServiceInvocation.Side side, String serviceName) {
+        final AtomicInteger counter = inFlight.get(side + ":" + serviceName);
+
+        return counter == null ? 0 : counter.get();
+    }
+
+    public JsonObject getInFlight() {
+        final JsonObject json = new JsonObject();
+        inFlight.forEach((key, counter) -> json.put(key, counter.get()));
+
+        return json;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import com.nannoq.tools.cluster.Deadline;
+import com.nannoq.tools.cluster.tracing.TraceContext;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * This class defines a consumer side wrapper for service proxies that runs every call through the consume
+ * interceptors before it is sent. The deadline and trace context of the caller are restored when the call is finally
+ * sent, since interceptors may proceed asynchronously.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class InterceptingInvocationHandler implements InvocationHandler {
+    private final Object target;
+    private final String serviceName;
+    private final List<ServiceInterceptor> interceptors;
+
+    private InterceptingInvocationHandler(Object target, String serviceName, List<ServiceInterceptor> interceptors) {
+        this.target = target;
+        this.serviceName = serviceName;
+        this.interceptors = interceptors;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T wrap(Class<T> type, T target, String serviceName, List<ServiceInterceptor> interceptors) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new InterceptingInvocationHandler(target, serviceName, interceptors));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) return method.invoke(target, args);
+
+        final ServiceInvocation invocation = new ServiceInvocation(ServiceInvocation.Side.CONSUMER, serviceName,
+                method.getName(), args, null, TraceContext.current(), interceptors);
+        final int handlerIndex = args == null ? -1 : args.length - 1;
+        final Handler<AsyncResult<Object>> resultHandler = handlerIndex >= 0 && args[handlerIndex] instanceof Handler ?
+                (Handler<AsyncResult<Object>>) args[handlerIndex] : null;
+        final Handler<AsyncResult<Object>> completion = res -> {
+            invocation.end(res);
+
+            if (resultHandler != null) resultHandler.handle(res);
+        };
+        final Deadline deadline = Deadline.current();
+
+        if (resultHandler != null) args[handlerIndex] = completion;
+
+        invocation.start(() -> {
+            final Deadline previous = Deadline.setCurrent(deadline);
+
+            try {
+                method.invoke(target, args);
+
+                if (resultHandler == null) invocation.end(Future.succeededFuture());
+            } catch (InvocationTargetException e) {
+                completion.handle(Future.failedFuture(e.getCause()));
+            } catch (IllegalAccessException e) {
+                completion.handle(Future.failedFuture(e));
+            } finally {
+                Deadline.setCurrent(previous);
+            }
+        }, completion);
+
+        return method.getReturnType().isInstance(proxy) ? proxy : null;
+    }
+}
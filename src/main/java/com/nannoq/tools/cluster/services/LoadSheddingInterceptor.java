@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.Closeable;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class defines a publish side interceptor that rejects requests with 503 while the event loop serving them lags
+ * more than the threshold, so callers can fail over instead of waiting out their timeout. Each context that handles
+ * requests gets its own lag probe, started on its first request and stopped when the context closes.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class LoadSheddingInterceptor implements ServiceInterceptor {
+    /**
+     * Failure code of requests shed while the event loop lags. It differs from ServicePriority.LOW_PRIORITY_REJECTED,
+     * so callers can tell an overloaded instance, worth failing over from, apart from a full low priority queue.
+     */
+    public static final int OVERLOADED = 503;
+
+    private final Vertx vertx;
+    private final long lagThreshold;
+    private final long probeInterval;
+    private final ConcurrentHashMap<Context, EventLoopLagProbe> probes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Context, Closeable> closeHooks = new ConcurrentHashMap<>();
+
+    public LoadSheddingInterceptor(Vertx vertx, long lagThreshold) {
+        this(vertx, lagThreshold, EventLoopLagProbe.DEFAULT_INTERVAL);
+    }
+
+    public LoadSheddingInterceptor(Vertx vertx, long lagThreshold, long probeInterval) {
+        this.vertx = vertx;
+        this.lagThreshold = lagThreshold;
+        this.probeInterval = probeInterval;
+    }
+
+    @Override
+    public void intercept(ServiceInvocation invocation) {
+        final Context context = Vertx.currentContext();
+
+        if (invocation.getSide() != ServiceInvocation.Side.PUBLISHER || context == null) {
+            invocation.proceed();
+
+            return;
+        }
+
+        final long lag = probe(context).getLagMillis();
+
+        if (lag > lagThreshold) {
+            invocation.fail(OVERLOADED, invocation.getServiceName() + " is overloaded, event loop lag is " +
+                    lag + "ms");
+        } else {
+            invocation.proceed();
+        }
+    }
+
+    private EventLoopLagProbe probe(Context context) {
+        final EventLoopLagProbe existing = probes.get(context);
+
+        if (existing != null) return existing;
+
+        final EventLoopLagProbe created = new EventLoopLagProbe(vertx, probeInterval);
+        final EventLoopLagProbe raced = probes.putIfAbsent(context, created);
+
+        if (raced != null) return raced;
+
+        final Closeable closeHook = completionHandler -> {
+            closeHooks.remove(context);
+
+            if (probes.remove(context, created)) created.stop();
+
+            completionHandler.handle(Future.succeededFuture());
+        };
+
+        closeHooks.put(context, closeHook);
+        context.addCloseHook(closeHook);
+
+        return created.start(context);
+    }
+
+    int probeCount() {
+        return probes.size();
+    }
+
+    /**
+     * @return the highest lag currently measured across probed event loops, in milliseconds
+     */
+    public long getMaxLagMillis() {
+        return probes.values().stream().mapToLong(EventLoopLagProbe::getLagMillis).max().orElse(0L);
+    }
+
+    public void stop() {
+        closeHooks.forEach((context, closeHook) -> context.removeCloseHook(closeHook));
+        closeHooks.clear();
+        probes.values().forEach(EventLoopLagProbe::stop);
+        probes.clear();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class defines a consume side interceptor that memoizes the results of service methods marked as cacheable,
+ * keyed on the service, method and arguments of the call. The cache is a size bounded LRU, and invalidations are published on the
+ * event bus so every node drops its entries for a service at once. Every invalidation bumps the generation of the
+ * service, and results of calls started in an earlier generation are not memoized.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class MemoizingInterceptor implements ServiceInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(MemoizingInterceptor.class.getSimpleName());
+
+    public static final String INVALIDATION_ADDRESS = "com.nannoq.services.manager.memoization.invalidate";
+
+    private final Vertx vertx;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Long>> ttls = new ConcurrentHashMap<>();
+    private final LinkedHashMap<MemoKey, Memo> memos;
+    private final Map<String, Long> generations = new HashMap<>();
+    private final MessageConsumer<JsonObject> invalidationConsumer;
+
+    public MemoizingInterceptor(Vertx vertx, int maxEntries) {
+        this.vertx = vertx;
+        this.memos = new LinkedHashMap<MemoKey, Memo>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MemoKey, Memo> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.invalidationConsumer = vertx.eventBus().consumer(INVALIDATION_ADDRESS, this::handleInvalidation);
+    }
+
+    public MemoizingInterceptor cacheable(String serviceName, String action, long ttl) {
+        ttls.computeIfAbsent(serviceName, name -> new ConcurrentHashMap<>()).put(action, ttl);
+
+        return this;
+    }
+
+    @Override
+    public void intercept(ServiceInvocation invocation) {
+        final String serviceName = invocation.getServiceName();
+        final Map<String, Long> serviceTtls = ttls.get(serviceName);
+        final Long ttl = invocation.getSide() == ServiceInvocation.Side.CONSUMER && serviceTtls != null ?
+                serviceTtls.get(invocation.getAction()) : null;
+        final MemoKey key = ttl == null ? null : key(serviceName, invocation.getAction(), invocation.getArguments());
+
+        if (key == null) {
+            invocation.proceed();
+
+            return;
+        }
+
+        final Memo memo = get(key);
+
+        if (memo != null) {
+            invocation.complete(copy(memo.value));
+
+            return;
+        }
+
+        final long generation = generation(serviceName);
+
+        invocation.endHandler(res -> {
+            if (res.succeeded()) {
+                put(serviceName, generation, key, new Memo(copy(res.result()), System.currentTimeMillis() + ttl));
+            }
+        });
+        invocation.proceed();
+    }
+
+    /**
+     * Drops the memoized results of a service on every node.
+     *
+     * @param serviceName String
+     */
+    public void invalidate(String serviceName) {
+        publishInvalidation(vertx, serviceName);
+    }
+
+    /**
+     * Drops the memoized results of a service on every node, without needing an interceptor on this one.
+     *
+     * @param vertx Vertx
+     * @param serviceName String
+     */
+    public static void publishInvalidation(Vertx vertx, String serviceName) {
+        vertx.eventBus().publish(INVALIDATION_ADDRESS, new JsonObject().put("service", serviceName));
+    }
+
+    public void close(Handler<AsyncResult<Void>> resultHandler) {
+        invalidationConsumer.unregister(resultHandler);
+    }
+
+    private void handleInvalidation(Message<JsonObject> message) {
+        final String serviceName = message.body().getString("service");
+
+        synchronized (memos) {
+            generations.merge(serviceName, 1L, Long::sum);
+            memos.keySet().removeIf(key -> key.serviceName.equals(serviceName));
+        }
+
+        logger.debug("Invalidated memoized results of " + serviceName);
+    }
+
+    private Memo get(MemoKey key) {
+        synchronized (memos) {
+            final Memo memo = memos.get(key);
+
+            if (memo != null && System.currentTimeMillis() >= memo.expiresAt) {
+                memos.remove(key);
+
+                return null;
+            }
+
+            return memo;
+        }
+    }
+
+    private long generation(String serviceName) {
+        synchronized (memos) {
+            return generations.getOrDefault(serviceName, 0L);
+        }
+    }
+
+    private void put(String serviceName, long generation, MemoKey key, Memo memo) {
+        synchronized (memos) {
+            if (generations.getOrDefault(serviceName, 0L) == generation) memos.put(key, memo);
+        }
+    }
+
+    private static MemoKey key(String serviceName, String action, Object[] arguments) {
+        final JsonArray key = new JsonArray();
+        final int count = arguments == null ? 0 : arguments.length;
+
+        for (int i = 0; i < count; i++) {
+            final Object argument = arguments[i];
+
+            if (i == count - 1 && argument instanceof Handler) continue;
+
+            try {
+                if (argument == null) {
+                    key.addNull();
+                } else {
+                    key.add(argument instanceof JsonObject || argument instanceof JsonArray ||
+                            argument instanceof String || argument instanceof Number || argument instanceof Boolean ?
+                            argument : Json.encode(argument));
+                }
+            } catch (EncodeException e) {
+                return null;
+            }
+        }
+
+        return new MemoKey(serviceName, action, key.encode());
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof JsonObject) return ((JsonObject) value).copy();
+        if (value instanceof JsonArray) return ((JsonArray) value).copy();
+
+        return value;
+    }
+
+    private static class MemoKey {
+        private final String serviceName;
+        private final String action;
+        private final String arguments;
+
+        private MemoKey(String serviceName, String action, String arguments) {
+            this.serviceName = serviceName;
+            this.action = action;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            MemoKey memoKey = (MemoKey) o;
+
+            return serviceName.equals(memoKey.serviceName) && action.equals(memoKey.action) &&
+                    arguments.equals(memoKey.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceName, action, arguments);
+        }
+    }
+
+    private static class Memo {
+        private final Object value;
+        private final long expiresAt;
+
+        private Memo(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class defines a short lived cache of names that discovery could not resolve, so repeated lookups of a missing
+ * service or API are answered locally until the TTL passes or the name is announced. It holds at most maxEntries names,
+ * further misses are not recorded until expired names have been purged.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class NegativeLookupCache {
+    private final ConcurrentHashMap<String, Long> missing = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private volatile long ttl;
+
+    NegativeLookupCache(long ttl, int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    void setTtl(long ttl) {
+        this.ttl = ttl;
+
+        if (ttl <= 0) missing.clear();
+    }
+
+    boolean isMissing(String name) {
+        final Long expiresAt = missing.get(name);
+
+        if (expiresAt == null) return false;
+
+        if (System.currentTimeMillis() >= expiresAt) {
+            missing.remove(name, expiresAt);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    void missing(String name) {
+        if (ttl <= 0) return;
+
+        final long now = System.currentTimeMillis();
+
+        if (missing.size() >= maxEntries) {
+            missing.entrySet().removeIf(entry -> entry.getValue() <= now);
+
+            if (missing.size() >= maxEntries && !missing.containsKey(name)) return;
+        }
+
+        missing.put(name, now + ttl);
+    }
+
+    int size() {
+        return missing.size();
+    }
+
+    void invalidate(String name) {
+        missing.remove(name);
+    }
+
+    void clear() {
+        missing.clear();
+    }
+}
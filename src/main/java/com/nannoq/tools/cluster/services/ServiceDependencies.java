@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class defines the services and APIs a verticle depends on. The ServiceManager resolves them in parallel when
+ * prefetched, keeps them refreshed in the background, and can hold the caller until all of them are available.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ServiceDependencies {
+    private static final long DEFAULT_REFRESH_INTERVAL = 30000L;
+    private static final long DEFAULT_AWAIT_TIMEOUT = 30000L;
+    private static final long DEFAULT_RETRY_INTERVAL = 1000L;
+
+    private final Map<String, Class<?>> services = new LinkedHashMap<>();
+    private final Set<String> apis = new LinkedHashSet<>();
+    private long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+    private boolean awaitAvailability = false;
+    private long awaitTimeout = DEFAULT_AWAIT_TIMEOUT;
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+    public <T> ServiceDependencies addService(Class<T> type) {
+        return addService(type, type.getSimpleName());
+    }
+
+    public <T> ServiceDependencies addService(Class<T> type, String customName) {
+        services.put(customName, type);
+
+        return this;
+    }
+
+    public ServiceDependencies addApi(String name) {
+        apis.add(name);
+
+        return this;
+    }
+
+    /**
+     * Sets the interval of the background refresh, 0 disables refreshing.
+     *
+     * @param refreshInterval long, milliseconds
+     * @return ServiceDependencies
+     */
+    public ServiceDependencies setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+
+        return this;
+    }
+
+    /**
+     * When set, prefetching only completes once every dependency has resolved, retrying until the await timeout, so
+     * a verticle can hold its deployment on it. Otherwise prefetching completes immediately and resolves in the
+     * background.
+     *
+     * @param awaitAvailability boolean
+     * @return ServiceDependencies
+     */
+    public ServiceDependencies setAwaitAvailability(boolean awaitAvailability) {
+        this.awaitAvailability = awaitAvailability;
+
+        return this;
+    }
+
+    public ServiceDependencies setAwaitTimeout(long awaitTimeout) {
+        this.awaitTimeout = awaitTimeout;
+
+        return this;
+    }
+
+    public ServiceDependencies setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+
+        return this;
+    }
+
+    public Map<String, Class<?>> getServices() {
+        return Collections.unmodifiableMap(services);
+    }
+
+    public Set<String> getApis() {
+        return Collections.unmodifiableSet(apis);
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public boolean isAwaitAvailability() {
+        return awaitAvailability;
+    }
+
+    public long getAwaitTimeout() {
+        return awaitTimeout;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+}
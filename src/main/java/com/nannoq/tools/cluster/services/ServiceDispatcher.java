@@ -0,0 +1,340 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import com.nannoq.tools.cluster.Deadline;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.serviceproxy.ServiceException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * This class defines the event bus entry point of a published service. It resolves the generated ProxyHandler the same
+ * way the ServiceBinder does, but owns the consumer itself so requests can be inspected before they reach the
+ * service implementation, without an extra event bus hop.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class ServiceDispatcher<T> implements Handler<Message<JsonObject>> {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceDispatcher.class.getSimpleName());
+
+    static final int PRIORITIZED_IN_FLIGHT = 64;
+    static final int LOW_PRIORITY_IN_FLIGHT = 1;
+    private static final int INTERNAL_ERROR = 500;
+
+    private final Vertx vertx;
+    private final String serviceName;
+    private final Handler<Message<JsonObject>> proxyHandler;
+    private final List<MessageConsumer<JsonObject>> consumers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final List<ServiceInterceptor> interceptors;
+    private final ArrayDeque<Message<JsonObject>> highPriorityQueue = new ArrayDeque<>();
+    private final ArrayDeque<Message<JsonObject>> normalPriorityQueue = new ArrayDeque<>();
+    private final ArrayDeque<Message<JsonObject>> lowPriorityQueue = new ArrayDeque<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private Context laneContext;
+    private int lowPriorityQueueSize;
+    private int prioritizedInFlight;
+    private int lowPriorityInFlight;
+    private boolean drainScheduled;
+
+    ServiceDispatcher(Vertx vertx, Class<T> type, String serviceName, T service, long timeoutSeconds,
+                      List<ServiceInterceptor> interceptors) {
+        this.vertx = vertx;
+        this.serviceName = serviceName;
+        this.interceptors = interceptors;
+        this.proxyHandler = createProxyHandler(vertx, type, service, timeoutSeconds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Handler<Message<JsonObject>> createProxyHandler(Vertx vertx, Class<T> type, T service,
+                                                                       long timeoutSeconds) {
+        final String handlerClassName = type.getName() + "VertxProxyHandler";
+
+        try {
+            final Class<?> handlerClass = type.getClassLoader().loadClass(handlerClassName);
+            final Constructor<?> constructor =
+                    handlerClass.getConstructor(Vertx.class, type, boolean.class, long.class);
+
+            return (Handler<Message<JsonObject>>) constructor.newInstance(vertx, service, true, timeoutSeconds);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create " + handlerClassName + ", is the type @ProxyGen?", e);
+        }
+    }
+
+    ServiceDispatcher<T> register(String address) {
+        consumers.add(vertx.eventBus().consumer(address, this));
+
+        return this;
+    }
+
+    /**
+     * Registers the HIGH and LOW priority lanes of the service. From then on every request is queued by its lane. At
+     * most PRIORITIZED_IN_FLIGHT HIGH and NORMAL requests are handed to the service at a time, HIGH first, so under
+     * load a HIGH request overtakes every NORMAL request still waiting. LOW requests are only handed over while no
+     * HIGH or NORMAL request is waiting or in flight, and at most LOW_PRIORITY_IN_FLIGHT at a time, so bulk traffic
+     * waits in its queue and is rejected once lowPriorityQueueSize requests are waiting.
+     *
+     * @param lowPriorityQueueSize int
+     * @return ServiceDispatcher
+     */
+    ServiceDispatcher<T> registerPriorityLanes(int lowPriorityQueueSize) {
+        this.lowPriorityQueueSize = lowPriorityQueueSize;
+        this.laneContext = vertx.getOrCreateContext();
+
+        consumers.add(vertx.eventBus().consumer(ServicePriority.HIGH.address(serviceName), message ->
+                enqueue(message, highPriorityQueue)));
+        consumers.add(vertx.eventBus().consumer(ServicePriority.LOW.address(serviceName), this::enqueueLowPriority));
+
+        return this;
+    }
+
+    private void enqueueLowPriority(Message<JsonObject> message) {
+        if (lowPriorityQueue.size() >= lowPriorityQueueSize) {
+            logger.debug("Rejecting low priority request for " + serviceName + ", queue is full");
+
+            message.reply(new ServiceException(ServicePriority.LOW_PRIORITY_REJECTED,
+                    "Low priority queue of " + serviceName + " is full"));
+
+            return;
+        }
+
+        enqueue(message, lowPriorityQueue);
+    }
+
+    private void enqueue(Message<JsonObject> message, ArrayDeque<Message<JsonObject>> queue) {
+        queue.add(message);
+        queued.incrementAndGet();
+
+        if (!drainScheduled) {
+            drainScheduled = true;
+            laneContext.runOnContext(v -> drainLanes());
+        }
+    }
+
+    private void drainLanes() {
+        drainScheduled = false;
+        Message<JsonObject> message;
+
+        while (prioritizedInFlight < PRIORITIZED_IN_FLIGHT &&
+                ((message = highPriorityQueue.poll()) != null || (message = normalPriorityQueue.poll()) != null)) {
+            queued.decrementAndGet();
+            prioritizedInFlight++;
+            invoke(message, () -> laneContext.runOnContext(v -> {
+                prioritizedInFlight--;
+                drainLanes();
+            }));
+        }
+
+        while (prioritizedInFlight == 0 && lowPriorityInFlight < LOW_PRIORITY_IN_FLIGHT &&
+                (message = lowPriorityQueue.poll()) != null) {
+            queued.decrementAndGet();
+            lowPriorityInFlight++;
+            invoke(message, () -> laneContext.runOnContext(v -> {
+                lowPriorityInFlight--;
+                drainLanes();
+            }));
+        }
+    }
+
+    String serviceName() {
+        return serviceName;
+    }
+
+    List<String> addresses() {
+        return consumers.stream().map(MessageConsumer::address).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of requests queued for or handed to the service that have not been replied to yet
+     */
+    int inFlight() {
+        return inFlight.get() + queued.get();
+    }
+
+    @Override
+    public void handle(Message<JsonObject> message) {
+        if (laneContext != null) {
+            enqueue(message, normalPriorityQueue);
+        } else {
+            invoke(message, null);
+        }
+    }
+
+    private void invoke(Message<JsonObject> message, Runnable done) {
+        final Deadline deadline = Deadline.fromHeaders(message.headers());
+
+        if (deadline != null && deadline.isExpired()) {
+            logger.debug("Dropping expired request for " + serviceName + ": " + message.headers().get("action"));
+
+            message.reply(new ServiceException(Deadline.DEADLINE_EXCEEDED,
+                    "Deadline exceeded before " + serviceName + " could handle the request"));
+
+            if (done != null) done.run();
+
+            return;
+        }
+
+        final boolean awaitsReply = message.replyAddress() != null;
+
+        inFlight.incrementAndGet();
+
+        if (interceptors.isEmpty()) {
+            dispatch(awaitsReply ? trackReply(message, null, done) : message, deadline, awaitsReply, done);
+
+            return;
+        }
+
+        final ServiceInvocation invocation = new ServiceInvocation(ServiceInvocation.Side.PUBLISHER, serviceName,
+                message.headers().get("action"), null, message.headers(), interceptors);
+        final Message<JsonObject> tracked = awaitsReply ? trackReply(message, invocation::end, done) : message;
+
+        invocation.start(() -> {
+            dispatch(tracked, deadline, awaitsReply, done);
+
+            if (!awaitsReply) invocation.end(Future.succeededFuture());
+        }, answer -> {
+            if (!awaitsReply) {
+                settle(done);
+                invocation.end(answer);
+            } else if (answer.failed()) {
+                // ServiceInvocation only short circuits with ServiceExceptions, which go back to the caller as they
+                // are. Anything else is reported as an internal error rather than relying on that.
+                tracked.reply(answer.cause() instanceof ServiceException ? answer.cause() :
+                        new ServiceException(INTERNAL_ERROR, String.valueOf(answer.cause().getMessage())));
+            } else {
+                tracked.reply(answer.result());
+            }
+        });
+    }
+
+    private void dispatch(Message<JsonObject> message, Deadline deadline, boolean awaitsReply, Runnable done) {
+        final Deadline previous = Deadline.setCurrent(deadline);
+
+        try {
+            proxyHandler.handle(message);
+        } finally {
+            Deadline.setCurrent(previous);
+
+            if (!awaitsReply) settle(done);
+        }
+    }
+
+    private void settle(Runnable done) {
+        inFlight.decrementAndGet();
+
+        if (done != null) done.run();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Message<JsonObject> trackReply(Message<JsonObject> message, Handler<AsyncResult<Object>> replyHandler,
+                                           Runnable done) {
+        final AtomicBoolean replied = new AtomicBoolean();
+
+        return (Message<JsonObject>) Proxy.newProxyInstance(Message.class.getClassLoader(),
+                new Class<?>[]{Message.class}, (proxy, method, args) -> {
+                    final String name = method.getName();
+
+                    if ((name.equals("reply") || name.equals("fail")) && replied.compareAndSet(false, true)) {
+                        settle(done);
+
+                        if (replyHandler != null) replyHandler.handle(replyResult(name, args));
+                    }
+
+                    try {
+                        return method.invoke(message, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static AsyncResult<Object> replyResult(String method, Object[] args) {
+        if (method.equals("fail")) return ServiceException.fail((Integer) args[0], (String) args[1]);
+
+        final Object reply = args == null || args.length == 0 ? null : args[0];
+
+        return reply instanceof Throwable ? Future.failedFuture((Throwable) reply) : Future.succeededFuture(reply);
+    }
+
+    void unregister(Handler<AsyncResult<Void>> resultHandler) {
+        unregister(new ArrayList<>(consumers), resultHandler);
+    }
+
+    /**
+     * Unregisters the consumers of all addresses but one, leaving that one in place.
+     *
+     * @param address String
+     * @param resultHandler Handler of AsyncResult of Void
+     */
+    void unregisterExcept(String address, Handler<AsyncResult<Void>> resultHandler) {
+        unregister(consumers.stream()
+                .filter(consumer -> !consumer.address().equals(address))
+                .collect(Collectors.toList()), resultHandler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void unregister(List<MessageConsumer<JsonObject>> toUnregister, Handler<AsyncResult<Void>> resultHandler) {
+        List<Future> unregisterFutures = toUnregister.stream()
+                .map(consumer -> {
+                    Future<Void> future = Future.future();
+                    consumer.unregister(future.completer());
+
+                    return (Future) future;
+                })
+                .collect(Collectors.toList());
+
+        consumers.removeAll(toUnregister);
+
+        CompositeFuture.all(unregisterFutures).setHandler(res -> {
+            if (res.failed()) {
+                resultHandler.handle(Future.failedFuture(res.cause()));
+            } else {
+                resultHandler.handle(Future.succeededFuture());
+            }
+        });
+    }
+}
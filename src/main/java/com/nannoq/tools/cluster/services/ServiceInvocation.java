@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import com.nannoq.tools.cluster.tracing.TraceContext;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.serviceproxy.ServiceException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class defines a single service call as it passes through an interceptor chain. On the publishing side it
+ * carries the event bus headers of the request, on the consuming side the arguments of the proxy call. End handlers
+ * are called once with the outcome of the call, however it was answered. The trace context of the invocation is made
+ * current whenever the chain proceeds, as interceptors may proceed asynchronously on another call stack.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class ServiceInvocation {
+    private static final int INTERNAL_ERROR = 500;
+
+    public enum Side { PUBLISHER, CONSUMER }
+
+    private final Side side;
+    private final String serviceName;
+    private final String action;
+    private final Object[] arguments;
+    private final MultiMap headers;
+    private final ServiceInterceptor[] interceptors;
+    private final long startNanos = System.nanoTime();
+    private final AtomicBoolean answered = new AtomicBoolean();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final List<Handler<AsyncResult<Object>>> endHandlers = new CopyOnWriteArrayList<>();
+    private int index;
+    private Runnable terminal;
+    private Handler<AsyncResult<Object>> shortCircuit;
+    private volatile TraceContext traceContext;
+
+    ServiceInvocation(Side side, String serviceName, String action, Object[] arguments, MultiMap headers,
+                      List<ServiceInterceptor> interceptors) {
+        this(side, serviceName, action, arguments, headers, null, interceptors);
+    }
+
+    ServiceInvocation(Side side, String serviceName, String action, Object[] arguments, MultiMap headers,
+                      TraceContext traceContext, List<ServiceInterceptor> interceptors) {
+        this.traceContext = traceContext;
+        this.side = side;
+        this.serviceName = serviceName;
+        this.action = action;
+        this.arguments = arguments;
+        this.headers = headers;
+        this.interceptors = interceptors.toArray(new ServiceInterceptor[0]);
+    }
+
+    void start(Runnable terminal, Handler<AsyncResult<Object>> shortCircuit) {
+        this.terminal = terminal;
+        this.shortCircuit = shortCircuit;
+
+        proceed();
+    }
+
+    public void proceed() {
+        if (answered.get()) return;
+
+        final TraceContext previous = TraceContext.setCurrent(traceContext);
+
+        try {
+            if (index < interceptors.length) {
+                try {
+                    interceptors[index++].intercept(this);
+                } catch (RuntimeException e) {
+                    fail(INTERNAL_ERROR, "Interceptor failed for " + serviceName + "." + action + ": " +
+                            e.getMessage());
+                }
+            } else if (answered.compareAndSet(false, true)) {
+                terminal.run();
+            }
+        } finally {
+            TraceContext.setCurrent(previous);
+        }
+    }
+
+    public void complete(Object result) {
+        if (answered.compareAndSet(false, true)) shortCircuit.handle(Future.succeededFuture(result));
+    }
+
+    public void fail(int failureCode, String message) {
+        if (answered.compareAndSet(false, true)) shortCircuit.handle(ServiceException.fail(failureCode, message));
+    }
+
+    public ServiceInvocation endHandler(Handler<AsyncResult<Object>> endHandler) {
+        endHandlers.add(endHandler);
+
+        return this;
+    }
+
+    void end(AsyncResult<Object> result) {
+        if (ended.compareAndSet(false, true)) endHandlers.forEach(endHandler -> endHandler.handle(result));
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @return the proxy call arguments on the consuming side, null on the publishing side
+     */
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return the request headers on the publishing side, null on the consuming side
+     */
+    public MultiMap getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the trace context the call runs under, null when it is not traced
+     */
+    public TraceContext getTraceContext() {
+        return traceContext;
+    }
+
+    /**
+     * Sets the trace context that the rest of the chain, and the call itself, runs under.
+     *
+     * @param traceContext TraceContext, may be null
+     */
+    public void setTraceContext(TraceContext traceContext) {
+        this.traceContext = traceContext;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+}
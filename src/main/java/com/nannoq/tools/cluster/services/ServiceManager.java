@@ -25,11 +25,22 @@
 
 package com.nannoq.tools.cluster.services;
 
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import com.nannoq.tools.cluster.ClusterUtils;
+import com.nannoq.tools.cluster.Deadline;
+import com.nannoq.tools.cluster.apis.ApiEndpoint;
+import com.nannoq.tools.cluster.tracing.TraceContext;
+import com.nannoq.tools.cluster.tracing.Tracer;
+import com.nannoq.tools.cluster.tracing.TracingInterceptor;
 import io.vertx.codegen.annotations.Fluent;
 import io.vertx.codegen.annotations.Nullable;
 import io.vertx.core.*;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.SendContext;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.impl.ConcurrentHashSet;
 import io.vertx.core.json.Json;
@@ -39,15 +50,20 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.servicediscovery.Record;
 import io.vertx.servicediscovery.ServiceDiscovery;
 import io.vertx.servicediscovery.ServiceDiscoveryOptions;
+import io.vertx.servicediscovery.Status;
 import io.vertx.servicediscovery.types.EventBusService;
-import io.vertx.servicediscovery.types.HttpEndpoint;
-import io.vertx.serviceproxy.ServiceBinder;
 import io.vertx.serviceproxy.ServiceException;
+import io.vertx.serviceproxy.ServiceProxyBuilder;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * This class defines a wrapper for publishing and consuming service declaration interfaces, and HTTP records.
@@ -62,18 +78,53 @@ public class ServiceManager {
     private static final String NANNOQ_SERVICE_ANNOUNCE_ADDRESS = "com.nannoq.services.manager.announce";
     private static final String NANNOQ_SERVICE_SERVICE_NAME = "nannoq-service-manager-service-discovery";
     private static final int NANNOQ_SERVICE_DEFAULT_TIMEOUT = 5;
+    private static final String NANNOQ_NODE_METADATA_KEY = "nannoq.node";
+    private static final String NANNOQ_INSTANCE_ADDRESS_METADATA_KEY = "nannoq.instance.address";
+    private static final String NANNOQ_PRIORITY_LANES_METADATA_KEY = "nannoq.priority.lanes";
+    private static final String NANNOQ_ZONE_ENV = "NANNOQ_ZONE";
+    private static final long DEFAULT_NEGATIVE_LOOKUP_TTL = 2000L;
+    private static final int DEFAULT_NEGATIVE_LOOKUP_ENTRIES = 1024;
+    private static final long DEFAULT_DRAIN_TIMEOUT = 5000L;
+    private static final long DRAIN_POLL_INTERVAL = 50L;
+    private static final int DEFAULT_MEMOIZED_RESULTS = 10000;
 
     private static final int NOT_FOUND = 404;
     private static final int INTERNAL_ERROR = 500;
 
     private ServiceDiscovery serviceDiscovery;
-    private ConcurrentHashMap<String, MessageConsumer<JsonObject>> registeredServices = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, ServiceDispatcher<?>> registeredServices = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, Record> registeredRecords = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, ConcurrentHashSet<Object>> fetchedServices = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, WeightedClientPool> balancedApis = new ConcurrentHashMap<>();
 
     private Vertx vertx;
-    private static Map<Vertx, ServiceManager> instanceMap = new HashMap<>();
+    private static final ConcurrentHashMap<Vertx, ServiceManager> instanceMap = new ConcurrentHashMap<>();
+    private final List<Handler<AsyncResult<ServiceManager>>> readyHandlers = new ArrayList<>();
+    private AsyncResult<ServiceManager> readyResult;
+    private volatile boolean started;
     private MessageConsumer<JsonObject> serviceAnnounceConsumer;
+    @SuppressWarnings("rawtypes") // EventBus.addInterceptor takes a raw SendContext handler
+    private final Handler<SendContext> contextPropagator = this::propagateContext;
+    private HazelcastInstance hazelcastInstance;
+    private String nodeId;
+    private String membershipListenerId;
+    private volatile String localZone = System.getenv(NANNOQ_ZONE_ENV);
+    private volatile DiscoverySnapshot discoverySnapshot;
+    private long snapshotTimerId = -1L;
+    private ConcurrentHashMap<String, Set<JsonObject>> unvalidatedSnapshotEntries = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, String> interfaceLookups = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<ServiceDependencies, Long> prefetchTimers = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, Set<String>> prefetchedRegistrations = new ConcurrentHashMap<>();
+    private final NegativeLookupCache negativeLookups = new NegativeLookupCache(DEFAULT_NEGATIVE_LOOKUP_TTL,
+            DEFAULT_NEGATIVE_LOOKUP_ENTRIES);
+    private volatile long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+    private ConcurrentHashMap<String, ConsistentHashRing<String>> hashRings = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, Object> instanceProxies = new ConcurrentHashMap<>();
+    private final List<ServiceInterceptor> publishInterceptors = new CopyOnWriteArrayList<>();
+    private final List<ServiceInterceptor> consumeInterceptors = new CopyOnWriteArrayList<>();
+    private MemoizingInterceptor memoizingInterceptor;
+    private LoadSheddingInterceptor loadSheddingInterceptor;
+    private TracingInterceptor tracingInterceptor;
 
     private ServiceManager() {
         throw new IllegalArgumentException("Should never run!");
@@ -81,12 +132,146 @@ public class ServiceManager {
 
     private ServiceManager(Vertx vertx) {
         this.vertx = vertx;
-        openDiscovery();
-        startServiceManagerKillVerticle();
     }
 
-    private void startServiceManagerKillVerticle() {
-        vertx.deployVerticle(new KillVerticle());
+    /**
+     * Opens discovery and registers the listeners of this ServiceManager. It runs once, outside of the instance map,
+     * as it deploys a verticle and its failure path removes the instance from the map again.
+     */
+    private void start() {
+        if (started) return;
+
+        synchronized (this) {
+            if (started) return;
+
+            open();
+            started = true;
+        }
+    }
+
+    private void open() {
+        Future<Void> discoveryFuture = Future.future();
+        Future<Void> announceFuture = Future.future();
+        Future<String> killVerticleFuture = Future.future();
+
+        openDiscovery(discoveryFuture, announceFuture);
+        vertx.eventBus().addInterceptor(contextPropagator);
+        listenForDepartedMembers();
+        startServiceManagerKillVerticle(killVerticleFuture);
+
+        CompositeFuture.all(discoveryFuture, announceFuture, killVerticleFuture).setHandler(res -> {
+            if (res.failed()) {
+                logger.error("ServiceManager failed to start", res.cause());
+
+                instanceMap.remove(vertx, this);
+                completeReady(Future.failedFuture(res.cause()));
+            } else {
+                logger.debug("ServiceManager ready...");
+
+                completeReady(Future.succeededFuture(this));
+            }
+        });
+    }
+
+    private void completeReady(AsyncResult<ServiceManager> result) {
+        final List<Handler<AsyncResult<ServiceManager>>> handlers;
+
+        synchronized (readyHandlers) {
+            readyResult = result;
+            handlers = new ArrayList<>(readyHandlers);
+            readyHandlers.clear();
+        }
+
+        handlers.forEach(handler -> handler.handle(result));
+    }
+
+    private void whenReady(Handler<AsyncResult<ServiceManager>> resultHandler) {
+        final Context context = vertx.getOrCreateContext();
+        final Handler<AsyncResult<ServiceManager>> onContext = result ->
+                context.runOnContext(v -> resultHandler.handle(result));
+
+        synchronized (readyHandlers) {
+            if (readyResult == null) {
+                readyHandlers.add(onContext);
+
+                return;
+            }
+        }
+
+        onContext.handle(readyResult);
+    }
+
+    private void listenForDepartedMembers() {
+        if (!vertx.isClustered()) return;
+
+        hazelcastInstance = ClusterUtils.getHazelcastInstance(vertx);
+
+        if (hazelcastInstance == null) return;
+
+        nodeId = hazelcastInstance.getCluster().getLocalMember().getUuid();
+        membershipListenerId = hazelcastInstance.getCluster().addMembershipListener(new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent) {
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent) {
+                final String departedNode = membershipEvent.getMember().getUuid();
+
+                vertx.runOnContext(v -> purgeDepartedMember(departedNode));
+            }
+
+            @Override
+            public void memberAttributeChanged(MemberAttributeEvent memberAttributeEvent) {
+            }
+        });
+    }
+
+    private void purgeDepartedMember(String departedNode) {
+        if (serviceDiscovery == null) return;
+
+        logger.info("Member " + departedNode + " left, purging its records...");
+
+        serviceDiscovery.getRecords(record -> record.getMetadata() != null &&
+                departedNode.equals(record.getMetadata().getString(NANNOQ_NODE_METADATA_KEY)), true, ar -> {
+            if (ar.failed()) {
+                logger.error("Could not fetch records of departed member " + departedNode, ar.cause());
+
+                return;
+            }
+
+            ar.result().forEach(record -> {
+                logger.info("Purging " + record.getName() + " from departed member " + departedNode);
+
+                fetchedServices.remove(record.getName());
+                releaseBalancedApi(record.getName());
+
+                serviceDiscovery.unpublish(record.getRegistration(), unpublishResult -> {
+                    if (unpublishResult.failed()) {
+                        logger.debug("Record " + record.getRegistration() + " already purged");
+                    }
+                });
+            });
+        });
+    }
+
+    private void propagateContext(SendContext<?> sendContext) {
+        final Deadline deadline = Deadline.current();
+        final TraceContext traceContext = TraceContext.current();
+
+        if (deadline != null && sendContext.message().headers().get(Deadline.HEADER) == null) {
+            deadline.writeTo(sendContext.message().headers());
+        }
+
+        if (traceContext != null && sendContext.message().headers().get(TraceContext.TRACE_ID_HEADER) == null) {
+            traceContext.writeTo(sendContext.message().headers());
+        }
+
+        sendContext.next();
+    }
+
+    private void startServiceManagerKillVerticle(Handler<AsyncResult<String>> deployHandler) {
+        vertx.deployVerticle(new KillVerticle(), deployHandler);
     }
 
     public static ServiceManager getInstance() {
@@ -104,22 +289,54 @@ public class ServiceManager {
     public static ServiceManager getInstance(Vertx vertx) {
         ServiceManager instance = instanceMap.get(vertx);
 
-        if (instance != null) {
-            return instance;
+        if (instance == null) {
+            final ServiceManager created = new ServiceManager(vertx);
+            final ServiceManager existing = instanceMap.putIfAbsent(vertx, created);
+            instance = existing != null ? existing : created;
         }
 
-        instance = new ServiceManager(vertx);
-
-        instanceMap.put(vertx, instance);
+        instance.start();
 
         return instance;
     }
 
+    /**
+     * Creates or returns the ServiceManager of this Vert.x instance, completing when discovery is ready. Concurrent
+     * callers share the same instance and are called back on their own context.
+     *
+     * @param vertx Vertx
+     * @param resultHandler Handler of AsyncResult of ServiceManager
+     */
+    public static void create(Vertx vertx, Handler<AsyncResult<ServiceManager>> resultHandler) {
+        getInstance(vertx).whenReady(resultHandler);
+    }
+
+    public static Future<ServiceManager> create(Vertx vertx) {
+        Future<ServiceManager> readyFuture = Future.future();
+        create(vertx, readyFuture.completer());
+
+        return readyFuture;
+    }
+
     private class KillVerticle extends AbstractVerticle {
         @Override
         public void stop(Future<Void> stopFuture) throws Exception {
             logger.info("Destroying ServiceManager");
 
+            if (serviceDiscovery != null) {
+                logger.info("Draining all services...");
+
+                drainAll(drained -> destroy(stopFuture));
+            } else {
+                logger.info("Discovery is null...");
+
+                instanceMap.remove(vertx);
+                Tracer.removeInstance(vertx);
+                stopFuture.tryComplete();
+            }
+        }
+
+        private void destroy(Future<Void> stopFuture) {
             if (serviceDiscovery != null) {
                 logger.info("Unpublishing all records...");
 
@@ -150,9 +367,9 @@ public class ServiceManager {
                         logger.info("UnPublish complete, Unregistering all services...");
 
                         registeredServices.forEach((k, v) -> {
-                            new ServiceBinder(vertx).setAddress(v.address()).unregister(v);
+                            v.unregister(unregisterRes -> {});
 
-                            logger.info("Unregistering " + v.address());
+                            logger.info("Unregistering " + v.addresses());
                         });
 
                         registeredServices.clear();
@@ -163,6 +380,26 @@ public class ServiceManager {
                                 ServiceDiscovery.releaseServiceObject(serviceDiscovery, service));
 
                         fetchedServices.clear();
+                        interfaceLookups.clear();
+                        hashRings.clear();
+                        instanceProxies.clear();
+
+                        if (memoizingInterceptor != null) memoizingInterceptor.close(closeRes -> {});
+                        disableLoadShedding();
+
+                        balancedApis.values().forEach(WeightedClientPool::close);
+                        balancedApis.clear();
+
+                        vertx.eventBus().removeInterceptor(contextPropagator);
+
+                        if (snapshotTimerId != -1L) vertx.cancelTimer(snapshotTimerId);
+                        prefetchTimers.values().forEach(vertx::cancelTimer);
+                        prefetchTimers.clear();
+                        prefetchedRegistrations.clear();
+
+                        if (membershipListenerId != null) {
+                            hazelcastInstance.getCluster().removeMembershipListener(membershipListenerId);
+                        }
 
                         closeDiscovery(unRegisterRes -> {
                             serviceAnnounceConsumer = null;
@@ -170,6 +407,7 @@ public class ServiceManager {
                             logger.info("Discovery Closed!");
 
                             instanceMap.remove(vertx);
+                            Tracer.removeInstance(vertx);
                             stopFuture.tryComplete();
 
                             logger.info("ServiceManager destroyed...");
@@ -185,27 +423,188 @@ public class ServiceManager {
                 logger.info("Discovery is null...");
 
                 instanceMap.remove(vertx);
+                Tracer.removeInstance(vertx);
                 stopFuture.tryComplete();
             }
         }
     }
 
-    private void openDiscovery() {
+    private void openDiscovery(Future<Void> discoveryFuture, Future<Void> announceFuture) {
         logger.debug("Opening Discovery...");
 
-        if (serviceDiscovery == null) {
-            serviceDiscovery = ServiceDiscovery.create(vertx, new ServiceDiscoveryOptions()
-                    .setAnnounceAddress(NANNOQ_SERVICE_ANNOUNCE_ADDRESS)
-                    .setUsageAddress(NANNOQ_SERVICE_ANNOUNCE_ADDRESS)
-                    .setName(NANNOQ_SERVICE_SERVICE_NAME));
+        serviceDiscovery = ServiceDiscovery.create(vertx, new ServiceDiscoveryOptions()
+                .setAnnounceAddress(NANNOQ_SERVICE_ANNOUNCE_ADDRESS)
+                .setUsageAddress(NANNOQ_SERVICE_ANNOUNCE_ADDRESS)
+                .setName(NANNOQ_SERVICE_SERVICE_NAME), discovery -> {
+            logger.debug("Discovery ready...");
 
-            logger.debug("Setting Discovery message consumer...");
+            discoveryFuture.tryComplete();
+        });
 
-            serviceAnnounceConsumer = vertx.eventBus()
-                    .consumer(NANNOQ_SERVICE_ANNOUNCE_ADDRESS, this::handleServiceEvent);
-        }
+        logger.debug("Setting Discovery message consumer...");
+
+        serviceAnnounceConsumer = vertx.eventBus()
+                .consumer(NANNOQ_SERVICE_ANNOUNCE_ADDRESS, this::handleServiceEvent);
+        serviceAnnounceConsumer.completionHandler(announceFuture.completer());
+    }
+
+    /**
+     * Sets the zone of this node. Records published afterwards are stamped with it, and consumed services and APIs
+     * prefer healthy instances in the same zone. Defaults to the NANNOQ_ZONE environment variable.
+     *
+     * @param zone String, null disables zone awareness
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager setLocalZone(String zone) {
+        localZone = zone;
+        fetchedServices.clear();
+        balancedApis.keySet().forEach(this::releaseBalancedApi);
+
+        return this;
+    }
+
+    public String getLocalZone() {
+        return localZone;
+    }
+
+    /**
+     * Enables warm restarts. Consumer caches are prewarmed from the snapshot file if it exists, and the records of all
+     * consumed services and APIs are written back to it on the given interval. Prewarmed entries are validated against
+     * live discovery on their first use, and dropped if no live record shares their location.
+     *
+     * @param file String
+     * @param interval long, milliseconds between snapshot writes
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager enableDiscoverySnapshot(@Nonnull String file, long interval) {
+        final DiscoverySnapshot snapshot = new DiscoverySnapshot(Paths.get(file));
+        discoverySnapshot = snapshot;
+
+        vertx.<Map<String, List<Record>>>executeBlocking(readFuture -> {
+            try {
+                readFuture.complete(snapshot.read());
+            } catch (IOException e) {
+                readFuture.fail(e);
+            }
+        }, false, res -> {
+            if (res.failed()) {
+                logger.warn("Could not read discovery snapshot " + file, res.cause());
+            } else {
+                prewarmFromSnapshot(res.result());
+            }
+        });
+
+        if (snapshotTimerId != -1L) vertx.cancelTimer(snapshotTimerId);
+        snapshotTimerId = vertx.setPeriodic(interval, id -> writeDiscoverySnapshot());
+
+        return this;
+    }
+
+    private void prewarmFromSnapshot(Map<String, List<Record>> consumed) {
+        consumed.forEach((name, records) -> records.forEach(record -> {
+            final boolean resolved = fetchedServices.containsKey(name) || balancedApis.containsKey(name);
+
+            if (resolved && !unvalidatedSnapshotEntries.containsKey(name)) return;
+
+            try {
+                if (WeightedClientPool.isMultiEndpoint(record)) {
+                    balancedApis.computeIfAbsent(name, k -> new WeightedClientPool(vertx, record));
+                } else {
+                    fetchedServices.computeIfAbsent(name, k -> new ConcurrentHashSet<>())
+                            .add(serviceDiscovery.getReference(record).get());
+                }
+
+                unvalidatedSnapshotEntries.computeIfAbsent(name, k -> new ConcurrentHashSet<>())
+                        .add(record.getLocation());
+            } catch (RuntimeException e) {
+                logger.debug("Skipping snapshot record " + name + ": " + e.getMessage());
+            }
+        }));
+
+        logger.info("Prewarmed " + unvalidatedSnapshotEntries.size() + " consumers from discovery snapshot");
+    }
 
-        logger.debug("Discovery ready...");
+    private void validateSnapshotEntry(String name) {
+        final Set<JsonObject> locations = unvalidatedSnapshotEntries.remove(name);
+
+        if (locations == null) return;
+
+        serviceDiscovery.getRecords(record -> locations.contains(record.getLocation()), ar -> {
+            if (ar.succeeded() && !ar.result().isEmpty()) {
+                logger.debug("Validated snapshot entry for " + name);
+            } else {
+                logger.info("Snapshot entry for " + name + " is stale, dropping...");
+
+                fetchedServices.remove(name);
+                releaseBalancedApi(name);
+            }
+        });
+    }
+
+    private void writeDiscoverySnapshot() {
+        final DiscoverySnapshot snapshot = discoverySnapshot;
+
+        if (snapshot == null || serviceDiscovery == null) return;
+
+        final Set<String> consumed = new HashSet<>(fetchedServices.keySet());
+        consumed.addAll(balancedApis.keySet());
+
+        if (consumed.isEmpty()) return;
+
+        final Map<String, String> byRegistration = new HashMap<>();
+        interfaceLookups.forEach((name, registration) -> {
+            if (consumed.contains(name)) byRegistration.put(registration, name);
+        });
+
+        serviceDiscovery.getRecords(record -> consumed.contains(record.getName()) ||
+                byRegistration.containsKey(record.getRegistration()), ar -> {
+            if (ar.failed()) {
+                logger.debug("Could not fetch records for discovery snapshot: " + ar.cause());
+
+                return;
+            }
+
+            final Map<String, List<Record>> records = new HashMap<>();
+
+            ar.result().forEach(record -> {
+                final String lookupName = byRegistration.get(record.getRegistration());
+
+                if (consumed.contains(record.getName())) {
+                    records.computeIfAbsent(record.getName(), k -> new ArrayList<>()).add(record);
+                }
+
+                if (lookupName != null && !lookupName.equals(record.getName())) {
+                    records.computeIfAbsent(lookupName, k -> new ArrayList<>()).add(record);
+                }
+            });
+
+            vertx.executeBlocking(writeFuture -> {
+                try {
+                    snapshot.write(records);
+                    writeFuture.complete();
+                } catch (IOException e) {
+                    writeFuture.fail(e);
+                }
+            }, false, res -> {
+                if (res.failed()) logger.warn("Could not write discovery snapshot " + snapshot.file(), res.cause());
+            });
+        });
+    }
+
+    /**
+     * Sets how long a service or API that discovery could not resolve is reported as missing without querying
+     * discovery again. An UP announce for the name clears it immediately.
+     *
+     * @param ttl long, milliseconds, 0 disables negative caching
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager setNegativeLookupTtl(long ttl) {
+        negativeLookups.setTtl(ttl);
+
+        return this;
     }
 
     private void handleServiceEvent(Message<JsonObject> serviceEvent) {
@@ -219,13 +618,67 @@ public class ServiceManager {
         String name = body.getString("name");
         String status = body.getString("status");
 
-        if (status != null && status.equals("DOWN")) {
+        if (name != null && status != null && status.equals("UP")) negativeLookups.invalidate(name);
+
+        updateHashRing(name, status, body.getJsonObject("metadata"));
+
+        if (status != null && (status.equals("DOWN") || status.equals("OUT_OF_SERVICE"))) {
             logger.debug("Removing downed service: " + name);
 
             fetchedServices.remove(name);
+            releaseBalancedApi(name);
+            releaseLaneProxies(name);
+        } else if (status != null && name != null && changesZoneSelection(status, body, localZone)) {
+            logger.debug("Reselecting zone local instances for: " + name);
+
+            fetchedServices.remove(name);
+            releaseBalancedApi(name);
+        }
+    }
+
+    /**
+     * An instance coming up in another zone does not change which instances are selected while local ones are up, so
+     * only local instances coming up, and any instance leaving, trigger a reselection.
+     */
+    private boolean changesZoneSelection(String status, JsonObject record, String zone) {
+        if (zone == null) return false;
+        if (!status.equals("UP")) return true;
+
+        final JsonObject metadata = record.getJsonObject("metadata");
+
+        return metadata == null || zone.equals(metadata.getString(ZoneSelector.ZONE_METADATA_KEY));
+    }
+
+    private void updateHashRing(String name, String status, JsonObject metadata) {
+        final ConsistentHashRing<String> ring = name == null ? null : hashRings.get(name);
+        final String instanceAddress = metadata == null ? null :
+                metadata.getString(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY);
+
+        if (ring == null || instanceAddress == null || status == null) return;
+
+        if (status.equals("UP")) {
+            ring.add(instanceAddress);
+        } else {
+            ring.remove(instanceAddress);
+            instanceProxies.remove(instanceAddress);
         }
     }
 
+    /**
+     * Lane proxies are cached by lane address, which all instances of a service share. They are dropped when an
+     * instance leaves, so the next consume checks again whether any instance left still has priority lanes.
+     */
+    private void releaseLaneProxies(String name) {
+        instanceProxies.remove(ServicePriority.HIGH.address(name));
+        instanceProxies.remove(ServicePriority.LOW.address(name));
+    }
+
+    private void releaseBalancedApi(String name) {
+        final WeightedClientPool pool = balancedApis.remove(name);
+
+        if (pool != null) pool.close();
+    }
+
     private void closeDiscovery(Handler<AsyncResult<Void>> resultHandler) {
         if (serviceDiscovery != null) serviceDiscovery.close();
         serviceDiscovery = null;
@@ -250,6 +703,7 @@ public class ServiceManager {
     public ServiceManager unPublishApi(@Nonnull Record service, @Nonnull Handler<AsyncResult<Void>> resultHandler) {
         registeredRecords.remove(service.getRegistration());
         serviceDiscovery.unpublish(service.getRegistration(), resultHandler);
+        releaseBalancedApi(service.getName());
         final ConcurrentHashSet<Object> objects = fetchedServices.get(service.getName());
         if (objects != null && objects.size() > 0) {
             final Iterator<Object> iterator = objects.iterator();
@@ -262,42 +716,72 @@ public class ServiceManager {
 
     @Fluent
     public <T> ServiceManager publishService(@Nonnull Class<T> type, @Nonnull T service) {
-        String serviceName = type.getSimpleName();
-
-        return publishService(createRecord(serviceName, type), r -> registeredServices.put(r.getRegistration(),
-                new ServiceBinder(vertx)
-                        .setTimeoutSeconds(NANNOQ_SERVICE_DEFAULT_TIMEOUT)
-                        .setAddress(serviceName)
-                        .register(type, service)), this::handlePublishResult);
+        return publishBoundService(type, type.getSimpleName(), service, 0, this::handlePublishResult);
     }
 
     @Fluent
     public <T> ServiceManager publishService(@Nonnull Class<T> type, @Nonnull String customName, @Nonnull T service) {
-        return publishService(createRecord(customName, type), r -> registeredServices.put(r.getRegistration(),
-                new ServiceBinder(vertx)
-                        .setTimeoutSeconds(NANNOQ_SERVICE_DEFAULT_TIMEOUT)
-                        .setAddress(customName)
-                        .register(type, service)), this::handlePublishResult);
+        return publishBoundService(type, customName, service, 0, this::handlePublishResult);
     }
 
     @Fluent
     public <T> ServiceManager publishService(@Nonnull Class<T> type, @Nonnull T service,
                                              @Nonnull Handler<AsyncResult<Record>> resultHandler) {
-        return publishService(createRecord(type), r -> registeredServices.put(r.getRegistration(),
-                new ServiceBinder(vertx)
-                        .setTimeoutSeconds(NANNOQ_SERVICE_DEFAULT_TIMEOUT)
-                        .setAddress(type.getSimpleName())
-                        .register(type, service)),resultHandler);
+        return publishBoundService(type, type.getSimpleName(), service, 0, resultHandler);
     }
 
     @Fluent
     public <T> ServiceManager publishService(@Nonnull Class<T> type, @Nonnull String customName, @Nonnull T service,
                                              @Nonnull Handler<AsyncResult<Record>> resultHandler) {
-        return publishService(createRecord(customName, type), r -> registeredServices.put(r.getRegistration(),
-                new ServiceBinder(vertx)
-                        .setTimeoutSeconds(NANNOQ_SERVICE_DEFAULT_TIMEOUT)
-                        .setAddress(customName)
-                        .register(type, service)), resultHandler);
+        return publishBoundService(type, customName, service, 0, resultHandler);
+    }
+
+    /**
+     * Publishes a service with priority lanes. Besides its shared address the service listens on a HIGH and a LOW
+     * priority address. High priority requests overtake normal ones waiting for one of the limited in flight slots of
+     * the service, low priority requests are only served while the service is otherwise idle, and at most lowPriorityQueueSize low priority requests wait before
+     * further ones are rejected with ServicePriority.LOW_PRIORITY_REJECTED.
+     *
+     * @param type Class of T
+     * @param customName String
+     * @param service T
+     * @param lowPriorityQueueSize int
+     * @param resultHandler Handler of AsyncResult of Record
+     * @param <T> Service type
+     * @return ServiceManager
+     */
+    @Fluent
+    public <T> ServiceManager publishService(@Nonnull Class<T> type, @Nonnull String customName, @Nonnull T service,
+                                             int lowPriorityQueueSize,
+                                             @Nonnull Handler<AsyncResult<Record>> resultHandler) {
+        return publishBoundService(type, customName, service, lowPriorityQueueSize, resultHandler);
+    }
+
+    private <T> ServiceManager publishBoundService(Class<T> type, String serviceName, T service,
+                                                   int lowPriorityQueueSize,
+                                                   Handler<AsyncResult<Record>> resultHandler) {
+        final String instanceAddress = serviceName + "." + UUID.randomUUID().toString();
+        final Record record = createRecord(serviceName, type);
+        record.getMetadata().put(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY, instanceAddress);
+
+        if (lowPriorityQueueSize > 0) record.getMetadata().put(NANNOQ_PRIORITY_LANES_METADATA_KEY, true);
+
+        return publishService(record, bindService(type, serviceName, instanceAddress, service, lowPriorityQueueSize),
+                resultHandler);
+    }
+
+    private <T> Consumer<Record> bindService(Class<T> type, String serviceName, String instanceAddress, T service,
+                                             int lowPriorityQueueSize) {
+        return r -> {
+            final ServiceDispatcher<T> dispatcher = new ServiceDispatcher<>(vertx, type, serviceName, service,
+                    NANNOQ_SERVICE_DEFAULT_TIMEOUT, publishInterceptors)
+                    .register(serviceName)
+                    .register(instanceAddress);
+
+            if (lowPriorityQueueSize > 0) dispatcher.registerPriorityLanes(lowPriorityQueueSize);
+
+            registeredServices.put(r.getRegistration(), dispatcher);
+        };
     }
 
     @Fluent
@@ -323,13 +807,13 @@ public class ServiceManager {
     @Fluent
     public ServiceManager unPublishService(@Nonnull String serviceName, @Nonnull Record service,
                                            @Nonnull Handler<AsyncResult<Void>> resultHandler) {
-        new ServiceBinder(vertx)
-                .setAddress(serviceName)
-                .unregister(registeredServices.get(service.getRegistration()));
+        final ServiceDispatcher<?> dispatcher = registeredServices.remove(service.getRegistration());
 
-        serviceDiscovery.unpublish(service.getRegistration(), resultHandler);
+        if (dispatcher != null) {
+            dispatcher.unregister(res -> logger.debug("Unregistered " + serviceName + ": " + res.succeeded()));
+        }
 
-        registeredServices.remove(service.getRegistration());
+        serviceDiscovery.unpublish(service.getRegistration(), resultHandler);
 
         final ConcurrentHashSet<Object> objects = fetchedServices.get(service.getName());
         if (objects != null && objects.size() > 0) {
@@ -341,6 +825,108 @@ public class ServiceManager {
         return this;
     }
 
+    /**
+     * Sets how long draining waits for in-flight requests before giving up, both for drainService and on shutdown.
+     *
+     * @param drainTimeout long, milliseconds
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager setDrainTimeout(long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+
+        return this;
+    }
+
+    @Fluent
+    public ServiceManager drainService(@Nonnull String serviceName, @Nonnull Record service,
+                                       @Nonnull Handler<AsyncResult<Void>> resultHandler) {
+        return drainService(serviceName, service, drainTimeout, resultHandler);
+    }
+
+    /**
+     * Takes a service out of rotation before unpublishing it. The record is marked OUT_OF_SERVICE and the shared
+     * address is unregistered so no new requests are routed here, while requests already on their way over the
+     * instance address are still served. The service is unregistered and unpublished once it has no requests in
+     * flight, or when the timeout passes.
+     *
+     * @param serviceName String
+     * @param service Record
+     * @param timeout long, milliseconds
+     * @param resultHandler Handler of AsyncResult of Void
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager drainService(@Nonnull String serviceName, @Nonnull Record service, long timeout,
+                                       @Nonnull Handler<AsyncResult<Void>> resultHandler) {
+        final ServiceDispatcher<?> dispatcher = registeredServices.get(service.getRegistration());
+
+        drain(service, dispatcher, Deadline.in(timeout), drained ->
+                unPublishService(serviceName, service, resultHandler));
+
+        return this;
+    }
+
+    private void drainAll(Handler<AsyncResult<CompositeFuture>> resultHandler) {
+        final Deadline deadline = Deadline.in(drainTimeout);
+        List<Future> drainFutures = new ArrayList<>();
+
+        registeredServices.forEach((registration, dispatcher) -> {
+            Future<Void> drainFuture = Future.future();
+            drain(registeredRecords.get(registration), dispatcher, deadline, drainFuture.completer());
+            drainFutures.add(drainFuture);
+        });
+
+        CompositeFuture.join(drainFutures).setHandler(resultHandler);
+    }
+
+    private void drain(Record service, ServiceDispatcher<?> dispatcher, Deadline deadline,
+                       Handler<AsyncResult<Void>> resultHandler) {
+        final String instanceAddress = service == null || service.getMetadata() == null ? null :
+                service.getMetadata().getString(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY);
+        final Handler<Void> quiesce = v -> {
+            if (dispatcher == null) {
+                resultHandler.handle(Future.succeededFuture());
+            } else {
+                dispatcher.unregisterExcept(instanceAddress, unregisterResult ->
+                        awaitQuiescence(dispatcher, deadline, resultHandler));
+            }
+        };
+
+        if (service == null) {
+            quiesce.handle(null);
+
+            return;
+        }
+
+        logger.info("Draining " + service.getName() + "...");
+
+        service.setStatus(Status.OUT_OF_SERVICE);
+        serviceDiscovery.update(service, updateResult -> {
+            if (updateResult.failed()) {
+                logger.warn("Could not mark " + service.getName() + " out of service", updateResult.cause());
+            }
+
+            quiesce.handle(null);
+        });
+    }
+
+    private void awaitQuiescence(ServiceDispatcher<?> dispatcher, Deadline deadline,
+                                 Handler<AsyncResult<Void>> resultHandler) {
+        if (dispatcher.inFlight() == 0) {
+            logger.info("Drained " + dispatcher.serviceName());
+
+            resultHandler.handle(Future.succeededFuture());
+        } else if (deadline.isExpired()) {
+            logger.warn("Drain of " + dispatcher.serviceName() + " timed out with " + dispatcher.inFlight() +
+                    " requests in flight");
+
+            resultHandler.handle(Future.succeededFuture());
+        } else {
+            vertx.setTimer(DRAIN_POLL_INTERVAL, id -> awaitQuiescence(dispatcher, deadline, resultHandler));
+        }
+    }
+
     @Fluent
     public ServiceManager consumeApi(@Nonnull String name,
                                      @Nonnull Handler<AsyncResult<HttpClient>> resultHandler) {
@@ -355,28 +941,597 @@ public class ServiceManager {
     @Fluent
     public <T> ServiceManager consumeService(@Nonnull Class<T> type, @Nonnull String customName,
                                              @Nonnull Handler<AsyncResult<T>> resultHandler) {
-        return getService(type, customName, resultHandler);
+        return getService(type, customName, intercepted(type, customName, resultHandler));
+    }
+
+    /**
+     * Adds an interceptor that every request to services published by this ServiceManager passes through, in the
+     * order added. Services already published pick it up immediately.
+     *
+     * @param interceptor ServiceInterceptor
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager addPublishInterceptor(@Nonnull ServiceInterceptor interceptor) {
+        publishInterceptors.add(interceptor);
+
+        return this;
+    }
+
+    /**
+     * Adds an interceptor that every call made on service proxies consumed after this point passes through, in the
+     * order added. Proxies are only wrapped while consume interceptors are configured.
+     *
+     * @param interceptor ServiceInterceptor
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager addConsumeInterceptor(@Nonnull ServiceInterceptor interceptor) {
+        consumeInterceptors.add(interceptor);
+
+        return this;
+    }
+
+    /**
+     * Marks a service method as cacheable. Results of successful calls to it are memoized on this node for the TTL,
+     * keyed on its arguments, and reused for proxies consumed after this point.
+     *
+     * @param serviceName String
+     * @param action String, the method name
+     * @param ttl long, milliseconds
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager setCacheable(@Nonnull String serviceName, @Nonnull String action, long ttl) {
+        memoizingInterceptor().cacheable(serviceName, action, ttl);
+
+        return this;
+    }
+
+    /**
+     * Drops memoized results of a service on every node of the cluster.
+     *
+     * @param serviceName String
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager invalidateCacheable(@Nonnull String serviceName) {
+        MemoizingInterceptor.publishInvalidation(vertx, serviceName);
+
+        return this;
+    }
+
+    private synchronized MemoizingInterceptor memoizingInterceptor() {
+        if (memoizingInterceptor == null) {
+            memoizingInterceptor = new MemoizingInterceptor(vertx, DEFAULT_MEMOIZED_RESULTS);
+            consumeInterceptors.add(0, memoizingInterceptor);
+        }
+
+        return memoizingInterceptor;
+    }
+
+    /**
+     * Enables load shedding for published services. Event loop lag is probed continuously on every context serving
+     * requests, and new requests are rejected with LoadSheddingInterceptor.OVERLOADED while it exceeds the threshold.
+     *
+     * @param lagThreshold long, milliseconds
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager enableLoadShedding(long lagThreshold) {
+        return enableLoadShedding(lagThreshold, EventLoopLagProbe.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Enables load shedding for published services, probing event loop lag on the given interval. A lag spike is
+     * acted on until the next probe, so the interval also bounds how long shedding lasts after the loop recovers.
+     *
+     * @param lagThreshold long, milliseconds
+     * @param probeInterval long, milliseconds
+     * @return ServiceManager
+     */
+    @Fluent
+    public synchronized ServiceManager enableLoadShedding(long lagThreshold, long probeInterval) {
+        disableLoadShedding();
+
+        loadSheddingInterceptor = new LoadSheddingInterceptor(vertx, lagThreshold, probeInterval);
+        publishInterceptors.add(0, loadSheddingInterceptor);
+
+        return this;
+    }
+
+    @Fluent
+    public synchronized ServiceManager disableLoadShedding() {
+        if (loadSheddingInterceptor != null) {
+            publishInterceptors.remove(loadSheddingInterceptor);
+            loadSheddingInterceptor.stop();
+            loadSheddingInterceptor = null;
+        }
+
+        return this;
+    }
+
+    /**
+     * @return the highest event loop lag measured by load shedding, in milliseconds, 0 when it is disabled
+     */
+    public long getEventLoopLag() {
+        final LoadSheddingInterceptor interceptor = loadSheddingInterceptor;
+
+        return interceptor == null ? 0L : interceptor.getMaxLagMillis();
+    }
+
+    /**
+     * Enables tracing of service calls on both the publishing and the consuming side, sampling root calls at the given
+     * rate. Spans are kept in the ring buffer of Tracer.getInstance(vertx), which is shared by everything running on
+     * the same Vertx instance.
+     *
+     * @param sampleRate double, 0 to 1
+     * @return ServiceManager
+     */
+    @Fluent
+    public synchronized ServiceManager enableTracing(double sampleRate) {
+        Tracer.getInstance(vertx).setSampleRate(sampleRate);
+
+        if (tracingInterceptor == null) {
+            tracingInterceptor = new TracingInterceptor(Tracer.getInstance(vertx));
+            publishInterceptors.add(tracingInterceptor);
+            consumeInterceptors.add(tracingInterceptor);
+        }
+
+        return this;
+    }
+
+    /**
+     * Removes an interceptor from both the publish and the consume chain. Calls already passing through it are not
+     * affected.
+     *
+     * @param interceptor ServiceInterceptor
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager removeInterceptor(@Nonnull ServiceInterceptor interceptor) {
+        publishInterceptors.remove(interceptor);
+        consumeInterceptors.remove(interceptor);
+
+        return this;
+    }
+
+    /**
+     * Consumes a service on one of its priority lanes. Services published without priority lanes are consumed on
+     * their shared address regardless of the lane asked for.
+     *
+     * @param type Class of T
+     * @param customName String
+     * @param priority ServicePriority
+     * @param resultHandler Handler of AsyncResult of T
+     * @param <T> Service type
+     * @return ServiceManager
+     */
+    @Fluent
+    public <T> ServiceManager consumeService(@Nonnull Class<T> type, @Nonnull String customName,
+                                             @Nonnull ServicePriority priority,
+                                             @Nonnull Handler<AsyncResult<T>> resultHandler) {
+        if (priority == ServicePriority.NORMAL) return consumeService(type, customName, resultHandler);
+
+        final String laneAddress = priority.address(customName);
+        final Handler<AsyncResult<T>> interceptedHandler = intercepted(type, customName, resultHandler);
+
+        if (instanceProxies.containsKey(laneAddress)) {
+            interceptedHandler.handle(Future.succeededFuture(instanceProxy(type, laneAddress)));
+
+            return this;
+        }
+
+        serviceDiscovery.getRecords(record -> customName.equals(record.getName()), ar -> {
+            if (ar.succeeded() && ar.result().stream().anyMatch(record ->
+                    record.getMetadata().getBoolean(NANNOQ_PRIORITY_LANES_METADATA_KEY, false))) {
+                interceptedHandler.handle(Future.succeededFuture(instanceProxy(type, laneAddress)));
+            } else {
+                logger.debug(customName + " has no priority lanes, consuming shared address...");
+
+                getService(type, customName, interceptedHandler);
+            }
+        });
+
+        return this;
+    }
+
+    private <T> Handler<AsyncResult<T>> intercepted(Class<T> type, String serviceName,
+                                                     Handler<AsyncResult<T>> resultHandler) {
+        if (consumeInterceptors.isEmpty()) return resultHandler;
+
+        return res -> {
+            if (res.failed()) {
+                resultHandler.handle(res);
+            } else {
+                resultHandler.handle(Future.succeededFuture(
+                        InterceptingInvocationHandler.wrap(type, res.result(), serviceName, consumeInterceptors)));
+            }
+        };
+    }
+
+    /**
+     * Consumes a service bound to a deadline. Calls fail fast once the deadline has passed, carry the remaining budget
+     * to the provider, and fail with Deadline.DEADLINE_EXCEEDED when the budget runs out before a reply arrives.
+     *
+     * @param type Class of T
+     * @param customName String
+     * @param deadline Deadline
+     * @param resultHandler Handler of AsyncResult of T
+     * @param <T> Service type
+     * @return ServiceManager
+     */
+    @Fluent
+    public <T> ServiceManager consumeService(@Nonnull Class<T> type, @Nonnull String customName,
+                                             @Nonnull Deadline deadline,
+                                             @Nonnull Handler<AsyncResult<T>> resultHandler) {
+        if (deadline.isExpired()) {
+            resultHandler.handle(ServiceException.fail(Deadline.DEADLINE_EXCEEDED,
+                    "Deadline exceeded before consuming " + customName));
+
+            return this;
+        }
+
+        return getService(type, customName, intercepted(type, customName, res -> {
+            if (res.failed()) {
+                resultHandler.handle(res);
+            } else {
+                resultHandler.handle(Future.succeededFuture(
+                        DeadlineInvocationHandler.wrap(vertx, type, res.result(), customName, deadline)));
+            }
+        }));
+    }
+
+    /**
+     * Resolves the declared dependencies in parallel, and keeps them refreshed in the background on their refresh
+     * interval. With awaitAvailability set the handler completes once all of them resolved, or fails with 404 when the
+     * await timeout passes first, which lets a verticle hold its deployment on it.
+     *
+     * @param dependencies ServiceDependencies
+     * @param resultHandler Handler of AsyncResult of Void
+     * @return ServiceManager
+     */
+    @Fluent
+    public ServiceManager prefetch(@Nonnull ServiceDependencies dependencies,
+                                   @Nonnull Handler<AsyncResult<Void>> resultHandler) {
+        if (dependencies.getRefreshInterval() > 0) {
+            final long timerId = vertx.setPeriodic(dependencies.getRefreshInterval(), id ->
+                    refreshDependencies(dependencies));
+            final Long previousTimerId = prefetchTimers.put(dependencies, timerId);
+
+            if (previousTimerId != null) vertx.cancelTimer(previousTimerId);
+        }
+
+        if (dependencies.isAwaitAvailability()) {
+            awaitDependencies(dependencies, System.currentTimeMillis() + dependencies.getAwaitTimeout(),
+                    resultHandler);
+        } else {
+            resolveDependencies(dependencies, res -> {
+                if (res.failed()) logger.warn("Dependencies not yet available: " + res.cause().getMessage());
+            });
+
+            resultHandler.handle(Future.succeededFuture());
+        }
+
+        return this;
+    }
+
+    @Fluent
+    public ServiceManager cancelPrefetch(@Nonnull ServiceDependencies dependencies) {
+        final Long timerId = prefetchTimers.remove(dependencies);
+
+        if (timerId != null) vertx.cancelTimer(timerId);
+
+        return this;
+    }
+
+    private void awaitDependencies(ServiceDependencies dependencies, long awaitUntil,
+                                   Handler<AsyncResult<Void>> resultHandler) {
+        resolveDependencies(dependencies, res -> {
+            if (res.succeeded()) {
+                resultHandler.handle(Future.succeededFuture());
+            } else if (System.currentTimeMillis() + dependencies.getRetryInterval() > awaitUntil) {
+                resultHandler.handle(ServiceException.fail(NOT_FOUND,
+                        "Dependencies unavailable: " + res.cause().getMessage()));
+            } else {
+                vertx.setTimer(dependencies.getRetryInterval(), id ->
+                        awaitDependencies(dependencies, awaitUntil, resultHandler));
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resolveDependencies(ServiceDependencies dependencies, Handler<AsyncResult<Void>> resultHandler) {
+        List<Future> resolveFutures = new ArrayList<>();
+
+        dependencies.getServices().forEach((name, type) -> {
+            Future<Object> serviceFuture = Future.future();
+            getService((Class<Object>) type, name, serviceFuture.completer());
+            resolveFutures.add(serviceFuture);
+        });
+
+        dependencies.getApis().forEach(name -> {
+            Future<HttpClient> apiFuture = Future.future();
+            getApi(name, apiFuture.completer());
+            resolveFutures.add(apiFuture);
+        });
+
+        CompositeFuture.all(resolveFutures).setHandler(res -> {
+            if (res.failed()) {
+                resultHandler.handle(Future.failedFuture(res.cause()));
+            } else {
+                resultHandler.handle(Future.succeededFuture());
+            }
+        });
+    }
+
+    /**
+     * Re-queries discovery for every dependency, bypassing the consumer caches, and swaps in a fresh entry when the
+     * selected records changed. Entries are left as they are when discovery fails.
+     */
+    private void refreshDependencies(ServiceDependencies dependencies) {
+        dependencies.getServices().forEach((name, type) -> refreshDependency(name, type));
+        dependencies.getApis().forEach(name -> refreshDependency(name, null));
+    }
+
+    private void refreshDependency(String name, Class<?> type) {
+        if (serviceDiscovery == null) return;
+
+        final String zone = localZone;
+
+        serviceDiscovery.getRecords(record -> name.equals(record.getName()), ar -> {
+            if (ar.failed()) {
+                logger.debug("Dependency refresh of " + name + " failed: " + ar.cause().getMessage());
+
+                return;
+            }
+
+            final List<Record> records = ZoneSelector.select(ar.result(), zone);
+
+            if (records.isEmpty()) {
+                logger.debug("Dependency " + name + " has no healthy instances, dropping cached entry...");
+
+                prefetchedRegistrations.remove(name);
+                fetchedServices.remove(name);
+                releaseBalancedApi(name);
+
+                return;
+            }
+
+            final List<Record> selected = zone == null ? records.subList(0, 1) : records;
+            final Set<String> registrations = selected.stream()
+                    .map(Record::getRegistration)
+                    .collect(Collectors.toSet());
+
+            final boolean cached = fetchedServices.containsKey(name) || balancedApis.containsKey(name);
+
+            if (registrations.equals(prefetchedRegistrations.put(name, registrations)) && cached) return;
+
+            logger.debug("Refreshing dependency " + name + " with " + registrations.size() + " records");
+
+            try {
+                if (type == null && WeightedClientPool.isMultiEndpoint(selected.get(0))) {
+                    final WeightedClientPool previous = balancedApis.put(name,
+                            new WeightedClientPool(vertx, selected.get(0)));
+
+                    if (previous != null) previous.close();
+                } else {
+                    final ConcurrentHashSet<Object> objects = new ConcurrentHashSet<>();
+
+                    selected.forEach(record -> {
+                        final String instanceAddress = record.getMetadata() == null ? null :
+                                record.getMetadata().getString(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY);
+
+                        objects.add(type != null && zone != null && instanceAddress != null ?
+                                createProxy(type, instanceAddress) :
+                                serviceDiscovery.getReference(record).get());
+                    });
+
+                    fetchedServices.put(name, objects);
+                }
+
+                negativeLookups.invalidate(name);
+            } catch (RuntimeException e) {
+                prefetchedRegistrations.remove(name);
+
+                logger.debug("Could not refresh dependency " + name + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @Fluent
+    public <T> ServiceManager consumeServiceForKey(@Nonnull Class<T> type, @Nonnull String key,
+                                                   @Nonnull Handler<AsyncResult<T>> resultHandler) {
+        return consumeServiceForKey(type, type.getSimpleName(), key, resultHandler);
+    }
+
+    /**
+     * Consumes the instance of a service that owns the given key. Instances are placed on a consistent hash ring with
+     * virtual nodes, so the same key reaches the same instance while it is up, and instances joining or leaving only
+     * move the keys they own. The ring is kept current from the announce address.
+     *
+     * @param type Class of T
+     * @param customName String
+     * @param key String
+     * @param resultHandler Handler of AsyncResult of T
+     * @param <T> Service type
+     * @return ServiceManager
+     */
+    @Fluent
+    public <T> ServiceManager consumeServiceForKey(@Nonnull Class<T> type, @Nonnull String customName,
+                                                   @Nonnull String key,
+                                                   @Nonnull Handler<AsyncResult<T>> resultHandler) {
+        final Handler<AsyncResult<T>> interceptedHandler = intercepted(type, customName, resultHandler);
+        final ConsistentHashRing<String> ring = hashRings.get(customName);
+
+        if (ring != null && !ring.isEmpty()) {
+            interceptedHandler.handle(Future.succeededFuture(instanceProxy(type, ring.get(key))));
+
+            return this;
+        }
+
+        serviceDiscovery.getRecords(record -> customName.equals(record.getName()), ar -> {
+            final List<String> instanceAddresses = ar.failed() ? new ArrayList<>() : ar.result().stream()
+                    .map(record -> record.getMetadata().getString(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            if (instanceAddresses.isEmpty()) {
+                logger.error("ERROR: Unable to get partitioned service for " + customName);
+
+                interceptedHandler.handle(ServiceException.fail(NOT_FOUND,
+                        "Unable to get partitioned service for " + customName));
+
+                return;
+            }
+
+            final ConsistentHashRing<String> built = new ConsistentHashRing<>();
+            instanceAddresses.forEach(built::add);
+            hashRings.put(customName, built);
+
+            interceptedHandler.handle(Future.succeededFuture(instanceProxy(type, built.get(key))));
+        });
+
+        return this;
+    }
+
+    /**
+     * Invokes every live instance of a service in parallel, each bounded by its own timeout which also travels to the
+     * provider as a deadline. The handler always receives a GatherResult once every instance has answered or timed
+     * out, unless no instances are published at all.
+     *
+     * @param type Class of T
+     * @param customName String
+     * @param call BiConsumer invoking the wanted method on an instance proxy
+     * @param perInstanceTimeout long, milliseconds
+     * @param resultHandler Handler of AsyncResult of GatherResult of R
+     * @param <T> Service type
+     * @param <R> Result type
+     * @return ServiceManager
+     */
+    @Fluent
+    public <T, R> ServiceManager scatterGather(@Nonnull Class<T> type, @Nonnull String customName,
+                                               @Nonnull BiConsumer<T, Handler<AsyncResult<R>>> call,
+                                               long perInstanceTimeout,
+                                               @Nonnull Handler<AsyncResult<GatherResult<R>>> resultHandler) {
+        serviceDiscovery.getRecords(record -> customName.equals(record.getName()), ar -> {
+            final List<String> instanceAddresses = ar.failed() ? new ArrayList<>() : ar.result().stream()
+                    .map(record -> record.getMetadata().getString(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            if (instanceAddresses.isEmpty()) {
+                resultHandler.handle(ServiceException.fail(NOT_FOUND, "No instances of " + customName));
+
+                return;
+            }
+
+            final GatherResult<R> gatherResult = new GatherResult<>();
+            List<Future> instanceFutures = new ArrayList<>();
+
+            instanceAddresses.forEach(instanceAddress -> {
+                Future<R> instanceFuture = Future.future();
+                final Handler<AsyncResult<R>> gather = instanceResult -> {
+                    if (instanceFuture.isComplete()) return;
+
+                    if (instanceResult.failed()) {
+                        gatherResult.failed(instanceAddress, instanceResult.cause());
+                        instanceFuture.fail(instanceResult.cause());
+                    } else {
+                        gatherResult.succeeded(instanceAddress, instanceResult.result());
+                        instanceFuture.complete(instanceResult.result());
+                    }
+                };
+                final long timerId = vertx.setTimer(perInstanceTimeout, id ->
+                        gather.handle(ServiceException.fail(Deadline.DEADLINE_EXCEEDED,
+                                instanceAddress + " did not answer within " + perInstanceTimeout + "ms")));
+                final Deadline previous = Deadline.setCurrent(Deadline.in(perInstanceTimeout));
+
+                try {
+                    call.accept(instanceProxy(type, instanceAddress), instanceResult -> {
+                        vertx.cancelTimer(timerId);
+                        gather.handle(instanceResult);
+                    });
+                } catch (RuntimeException e) {
+                    vertx.cancelTimer(timerId);
+                    gather.handle(Future.failedFuture(e));
+                } finally {
+                    Deadline.setCurrent(previous);
+                }
+
+                instanceFutures.add(instanceFuture);
+            });
+
+            CompositeFuture.join(instanceFutures).setHandler(gathered ->
+                    resultHandler.handle(Future.succeededFuture(gatherResult)));
+        });
+
+        return this;
+    }
+
+    public <T, R> Future<GatherResult<R>> scatterGather(@Nonnull Class<T> type, @Nonnull String customName,
+                                                        @Nonnull BiConsumer<T, Handler<AsyncResult<R>>> call,
+                                                        long perInstanceTimeout) {
+        Future<GatherResult<R>> gatherFuture = Future.future();
+        scatterGather(type, customName, call, perInstanceTimeout, gatherFuture.completer());
+
+        return gatherFuture;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T instanceProxy(Class<T> type, String instanceAddress) {
+        return (T) instanceProxies.computeIfAbsent(instanceAddress, address -> createProxy(type, address));
     }
 
     private ServiceManager getApi(String name, Handler<AsyncResult<HttpClient>> resultHandler) {
         logger.debug("Getting API: " + name);
 
+        WeightedClientPool balancedApi = balancedApis.get(name);
+
+        if (balancedApi != null) {
+            validateSnapshotEntry(name);
+            resultHandler.handle(Future.succeededFuture(balancedApi.next()));
+
+            return this;
+        }
+
         ConcurrentHashSet<Object> existingServices = fetchedServices.get(name);
 
         if (existingServices != null && existingServices.size() > 0) {
             logger.debug("Returning fetched Api...");
 
+            validateSnapshotEntry(name);
+
             final ArrayList<Object> objects = new ArrayList<>(existingServices);
             Collections.shuffle(objects);
             resultHandler.handle(Future.succeededFuture((HttpClient) objects.get(0)));
+        } else if (negativeLookups.isMissing(name)) {
+            logger.debug("API " + name + " recently not found...");
+
+            resultHandler.handle(ServiceException.fail(NOT_FOUND, "API not found..."));
         } else {
-            HttpEndpoint.getClient(serviceDiscovery, new JsonObject().put("name", name), ar -> {
-                if (ar.failed()) {
+            final String zone = localZone;
+
+            serviceDiscovery.getRecords(record -> name.equals(record.getName()), ar -> {
+                final List<Record> records = ar.failed() ? null : ZoneSelector.select(ar.result(), zone);
+
+                if (records == null || records.isEmpty()) {
                     logger.error("Unable to fetch API...");
 
+                    if (ar.succeeded()) negativeLookups.missing(name);
+
                     resultHandler.handle(ServiceException.fail(404, "API not found..."));
+                } else if (WeightedClientPool.isMultiEndpoint(records.get(0))) {
+                    logger.debug("Balancing " + name + " across " +
+                            records.get(0).getLocation().getJsonArray(ApiEndpoint.ENDPOINTS_KEY).size() +
+                            " endpoints");
+
+                    final WeightedClientPool pool = balancedApis.computeIfAbsent(name, k ->
+                            new WeightedClientPool(vertx, records.get(0)));
+
+                    resultHandler.handle(Future.succeededFuture(pool.next()));
                 } else {
-                    HttpClient client = ar.result();
+                    final List<Record> selected = zone == null ? records.subList(0, 1) : records;
                     ConcurrentHashSet<Object> objects = fetchedServices.get(name);
 
                     if (objects == null) {
@@ -384,13 +1539,19 @@ public class ServiceManager {
                         objects = fetchedServices.get(name);
                     }
 
-                    if (!objects.contains(client)) {
-                        objects.add(client);
+                    for (Record record : selected) {
+                        HttpClient client = (HttpClient) serviceDiscovery.getReference(record).get();
+
+                        if (!objects.contains(client)) {
+                            objects.add(client);
+                        }
                     }
 
                     fetchedServices.put(name, objects);
 
-                    resultHandler.handle(Future.succeededFuture(client));
+                    final ArrayList<Object> clients = new ArrayList<>(objects);
+                    Collections.shuffle(clients);
+                    resultHandler.handle(Future.succeededFuture((HttpClient) clients.get(0)));
                 }
             });
         }
@@ -411,20 +1572,32 @@ public class ServiceManager {
         if (existingServices != null && existingServices.size() > 0) {
             logger.debug("Returning fetched Api...");
 
+            validateSnapshotEntry(serviceName);
+
             final ArrayList<Object> objects = new ArrayList<>(existingServices);
             Collections.shuffle(objects);
             resultHandler.handle(Future.succeededFuture((T) objects.get(0)));
+        } else if (negativeLookups.isMissing(serviceName)) {
+            logger.debug("Service " + serviceName + " recently not found...");
+
+            resultHandler.handle(ServiceException.fail(NOT_FOUND, "Unable to get service for " + serviceName));
+        } else if (localZone != null) {
+            getZoneLocalService(type, serviceName, localZone, resultHandler);
         } else {
-            EventBusService.getProxy(serviceDiscovery, type, ar -> {
-                if (ar.failed()) {
+            serviceDiscovery.getRecord(new JsonObject().put("service.interface", type.getName()), ar -> {
+                if (ar.failed() || ar.result() == null) {
                     logger.error("ERROR: Unable to get service for " + serviceName);
 
-                    resultHandler.handle(ServiceException.fail(NOT_FOUND,
-                            "Unable to get service for " + serviceName + " : " + ar.cause()));
+                    if (ar.succeeded()) negativeLookups.missing(serviceName);
+
+                    resultHandler.handle(ServiceException.fail(NOT_FOUND, "Unable to get service for " +
+                            serviceName + " : " + (ar.failed() ? ar.cause() : "no matching records")));
                 } else {
-                    T service = ar.result();
+                    T service = serviceDiscovery.getReference(ar.result()).getAs(type);
                     ConcurrentHashSet<Object> objects = fetchedServices.get(serviceName);
 
+                    interfaceLookups.put(serviceName, ar.result().getRegistration());
+
                     if (objects == null) {
                         fetchedServices.put(serviceName, new ConcurrentHashSet<>());
                         objects = fetchedServices.get(serviceName);
@@ -446,8 +1619,51 @@ public class ServiceManager {
         return this;
     }
 
-    private <T> Record createRecord(Class<T> type) {
-        return createRecord(type.getSimpleName(), type);
+    @SuppressWarnings("unchecked")
+    private <T> void getZoneLocalService(Class<T> type, String serviceName, String zone,
+                                         Handler<AsyncResult<T>> resultHandler) {
+        serviceDiscovery.getRecords(record -> serviceName.equals(record.getName()), ar -> {
+            final List<Record> records = ar.failed() ? null : ZoneSelector.select(ar.result(), zone);
+
+            if (records == null || records.isEmpty()) {
+                logger.error("ERROR: Unable to get service for " + serviceName);
+
+                if (ar.succeeded()) negativeLookups.missing(serviceName);
+
+                resultHandler.handle(ServiceException.fail(NOT_FOUND, "Unable to get service for " + serviceName +
+                        " : " + (ar.failed() ? ar.cause() : "no healthy instances")));
+
+                return;
+            }
+
+            logger.debug("Selected " + records.size() + " instances of " + serviceName + " for zone " + zone + ": " +
+                    records.stream().map(ZoneSelector::zone).collect(Collectors.toList()));
+
+            ConcurrentHashSet<Object> objects = fetchedServices.get(serviceName);
+
+            if (objects == null) {
+                fetchedServices.put(serviceName, new ConcurrentHashSet<>());
+                objects = fetchedServices.get(serviceName);
+            }
+
+            for (Record record : records) {
+                final String instanceAddress = record.getMetadata().getString(NANNOQ_INSTANCE_ADDRESS_METADATA_KEY);
+
+                objects.add(instanceAddress != null ?
+                        createProxy(type, instanceAddress) :
+                        serviceDiscovery.getReference(record).get());
+            }
+
+            fetchedServices.put(serviceName, objects);
+
+            final ArrayList<Object> services = new ArrayList<>(objects);
+            Collections.shuffle(services);
+            resultHandler.handle(Future.succeededFuture((T) services.get(0)));
+        });
+    }
+
+    private <T> T createProxy(Class<T> type, String address) {
+        return new ServiceProxyBuilder(vertx).setAddress(address).build(type);
     }
 
     private <T> Record createRecord(String serviceName, Class<T> type) {
@@ -456,6 +1672,10 @@ public class ServiceManager {
 
     private ServiceManager publishService(@Nonnull Record record, @Nonnull Consumer<Record> recordLogic,
                                           @Nonnull Handler<AsyncResult<Record>> resultHandler) {
+        if (record.getMetadata() == null) record.setMetadata(new JsonObject());
+        if (nodeId != null) record.getMetadata().put(NANNOQ_NODE_METADATA_KEY, nodeId);
+        if (localZone != null) record.getMetadata().put(ZoneSelector.ZONE_METADATA_KEY, localZone);
+
         serviceDiscovery.publish(record, ar -> {
             if (ar.failed()) {
                 logger.error("ERROR: Failed publish of " +
@@ -468,6 +1688,7 @@ public class ServiceManager {
             } else {
                 Record publishedRecord = ar.result();
                 registeredRecords.put(publishedRecord.getRegistration(), publishedRecord);
+                negativeLookups.invalidate(publishedRecord.getName());
                 recordLogic.accept(publishedRecord);
 
                 logger.debug("Successful publish of: " +
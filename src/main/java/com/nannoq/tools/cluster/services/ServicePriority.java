@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+/**
+ * This enum defines the lanes a service published with priority lanes can be called on. NORMAL is the shared address
+ * of the service, while HIGH and LOW have addresses of their own.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public enum ServicePriority {
+    HIGH(".high"),
+    NORMAL(""),
+    LOW(".low");
+
+    /**
+     * Failure code of LOW requests rejected because the low priority queue of the service is full. The instance is
+     * still serving HIGH and NORMAL requests, so this is a signal to back off rather than to fail over, unlike
+     * LoadSheddingInterceptor.OVERLOADED.
+     */
+    public static final int LOW_PRIORITY_REJECTED = 429;
+
+    private final String suffix;
+
+    ServicePriority(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String address(String serviceName) {
+        return serviceName + suffix;
+    }
+}
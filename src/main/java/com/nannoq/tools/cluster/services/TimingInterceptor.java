@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class defines an interceptor that times service calls per side, service and action, from the moment the call
+ * enters the chain until it is answered.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class TimingInterceptor implements ServiceInterceptor {
+    private final ConcurrentHashMap<String, Timing> timings = new ConcurrentHashMap<>();
+
+    @Override
+    public void intercept(ServiceInvocation invocation) {
+        final Timing timing = timings.computeIfAbsent(
+                invocation.getSide() + ":" + invocation.getServiceName() + "." + invocation.getAction(),
+                k -> new Timing());
+
+        invocation.endHandler(res -> timing.record(invocation.getElapsedNanos(), res.succeeded()));
+        invocation.proceed();
+    }
+
+    /**
+     * @return JsonObject with count, failures, averageMicros and maxMicros for every side:service.action
+     */
+    public JsonObject getTimings() {
+        final JsonObject json = new JsonObject();
+        timings.forEach((key, timing) -> json.put(key, timing.toJson()));
+
+        return json;
+    }
+
+    public void reset() {
+        timings.clear();
+    }
+
+    private static class Timing {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos, boolean succeeded) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+            if (!succeeded) failures.increment();
+        }
+
+        private JsonObject toJson() {
+            final long calls = count.sum();
+
+            return new JsonObject()
+                    .put("count", calls)
+                    .put("failures", failures.sum())
+                    .put("averageMicros", calls == 0 ? 0L : totalNanos.sum() / calls / 1000L)
+                    .put("maxMicros", maxNanos.get() / 1000L);
+        }
+    }
+}
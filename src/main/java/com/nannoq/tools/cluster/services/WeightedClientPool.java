@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import com.nannoq.tools.cluster.apis.ApiEndpoint;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class defines a set of HttpClients, one connection pool per endpoint of a multi-endpoint API record, selected
+ * by weight on every consume.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+class WeightedClientPool {
+    private final List<HttpClient> clients;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    WeightedClientPool(Vertx vertx, Record record) {
+        final JsonObject location = record.getLocation();
+        final boolean ssl = location.getBoolean("ssl", false);
+        final List<ApiEndpoint> endpoints = ApiEndpoint.fromJsonArray(location.getJsonArray(ApiEndpoint.ENDPOINTS_KEY));
+
+        clients = new ArrayList<>(endpoints.size());
+        cumulativeWeights = new int[endpoints.size()];
+        int weight = 0;
+
+        for (int i = 0; i < endpoints.size(); i++) {
+            final ApiEndpoint endpoint = endpoints.get(i);
+            weight += endpoint.getWeight();
+            cumulativeWeights[i] = weight;
+
+            clients.add(vertx.createHttpClient(new HttpClientOptions()
+                    .setDefaultHost(endpoint.getHost())
+                    .setDefaultPort(endpoint.getPort())
+                    .setSsl(ssl)
+                    .setKeepAlive(true)));
+        }
+
+        totalWeight = weight;
+    }
+
+    static boolean isMultiEndpoint(Record record) {
+        return record.getLocation() != null && record.getLocation().getJsonArray(ApiEndpoint.ENDPOINTS_KEY) != null;
+    }
+
+    HttpClient next() {
+        if (clients.size() == 1) return clients.get(0);
+
+        final int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) return clients.get(i);
+        }
+
+        return clients.get(clients.size() - 1);
+    }
+
+    void close() {
+        clients.forEach(HttpClient::close);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.Status;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * This class defines the locality rule for instance selection. Healthy instances in the local zone are preferred, and
+ * other zones are only used when the local zone has no healthy instances.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+final class ZoneSelector {
+    static final String ZONE_METADATA_KEY = "nannoq.zone";
+
+    private ZoneSelector() {
+    }
+
+    static List<Record> select(List<Record> records, String localZone) {
+        final List<Record> healthy = records.stream()
+                .filter(record -> record.getStatus() == Status.UP)
+                .collect(toList());
+
+        if (localZone == null) return healthy;
+
+        final List<Record> local = healthy.stream()
+                .filter(record -> localZone.equals(zone(record)))
+                .collect(toList());
+
+        return local.isEmpty() ? healthy : local;
+    }
+
+    static String zone(Record record) {
+        final JsonObject metadata = record.getMetadata();
+
+        return metadata == null ? null : metadata.getString(ZONE_METADATA_KEY);
+    }
+}
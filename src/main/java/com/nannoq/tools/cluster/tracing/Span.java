@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.tracing;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class defines a timed operation within a trace. Spans are recorded by their Tracer when finished.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class Span {
+    public enum Kind { CLIENT, SERVER, INTERNAL }
+
+    private final Tracer tracer;
+    private final TraceContext context;
+    private final String parentSpanId;
+    private final String name;
+    private final Kind kind;
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile long durationMicros = -1L;
+    private volatile boolean succeeded;
+    private volatile String error;
+
+    Span(Tracer tracer, String traceId, String spanId, String parentSpanId, String name, Kind kind) {
+        this.tracer = tracer;
+        this.context = new TraceContext(traceId, spanId);
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+    }
+
+    public TraceContext context() {
+        return context;
+    }
+
+    public void finish(boolean succeeded, String error) {
+        if (!finished.compareAndSet(false, true)) return;
+
+        this.succeeded = succeeded;
+        this.error = error;
+        this.durationMicros = (System.nanoTime() - startNanos) / 1000L;
+
+        tracer.record(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    public JsonObject toJson() {
+        final JsonObject json = new JsonObject()
+                .put("traceId", context.getTraceId())
+                .put("spanId", context.getSpanId())
+                .put("name", name)
+                .put("kind", kind.name())
+                .put("start", startEpochMillis)
+                .put("durationMicros", durationMicros)
+                .put("succeeded", succeeded);
+
+        if (parentSpanId != null) json.put("parentSpanId", parentSpanId);
+        if (error != null) json.put("error", error);
+
+        return json;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.tracing;
+
+import io.vertx.core.MultiMap;
+
+/**
+ * This class defines the trace context carried between services, identifying the trace and the span a request was
+ * sent from. It travels in event bus and HTTP headers, and is kept in a thread local while a traced call runs. Only
+ * sampled requests carry a context.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public final class TraceContext {
+    public static final String TRACE_ID_HEADER = "X-Nannoq-Trace-Id";
+    public static final String SPAN_ID_HEADER = "X-Nannoq-Span-Id";
+
+    private static final ThreadLocal<TraceContext> current = new ThreadLocal<>();
+
+    private final String traceId;
+    private final String spanId;
+
+    TraceContext(String traceId, String spanId) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+    }
+
+    public static TraceContext fromHeaders(MultiMap headers) {
+        final String traceId = headers == null ? null : headers.get(TRACE_ID_HEADER);
+        final String spanId = headers == null ? null : headers.get(SPAN_ID_HEADER);
+
+        return traceId == null || spanId == null ? null : new TraceContext(traceId, spanId);
+    }
+
+    public static TraceContext current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the context of the current thread.
+     *
+     * @param traceContext TraceContext, may be null
+     * @return the previous context, to be restored when done
+     */
+    public static TraceContext setCurrent(TraceContext traceContext) {
+        final TraceContext previous = current.get();
+
+        if (traceContext == null) {
+            current.remove();
+        } else {
+            current.set(traceContext);
+        }
+
+        return previous;
+    }
+
+    public MultiMap writeTo(MultiMap headers) {
+        return headers.set(TRACE_ID_HEADER, traceId).set(SPAN_ID_HEADER, spanId);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.tracing;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class defines an in process tracer. Root spans are sampled at the configured rate, and spans continuing a
+ * sampled trace are always kept. Finished spans are written into a fixed size ring buffer, which can be dumped, and
+ * are handed to an optional exporter, so no external collector is needed. Each Vertx instance has a tracer of its own.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class Tracer {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final ConcurrentHashMap<Vertx, Tracer> instanceMap = new ConcurrentHashMap<>();
+
+    private volatile double sampleRate = 0.0;
+    private volatile AtomicReferenceArray<Span> ring = new AtomicReferenceArray<>(DEFAULT_CAPACITY);
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile Handler<Span> exporter;
+
+    public static Tracer getInstance(Vertx vertx) {
+        return instanceMap.computeIfAbsent(vertx, v -> new Tracer());
+    }
+
+    /**
+     * @return the Tracer of the Vertx instance owning the current context, or null when there is none
+     */
+    public static Tracer current() {
+        final Context context = Vertx.currentContext();
+
+        return context == null ? null : instanceMap.get(context.owner());
+    }
+
+    public static void removeInstance(Vertx vertx) {
+        instanceMap.remove(vertx);
+    }
+
+    /**
+     * @param sampleRate double, share of root spans to sample, 0 disables tracing
+     * @return Tracer
+     */
+    public Tracer setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+
+        return this;
+    }
+
+    public Tracer setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive!");
+
+        ring = new AtomicReferenceArray<>(capacity);
+        recorded.set(0L);
+
+        return this;
+    }
+
+    public Tracer setExporter(Handler<Span> exporter) {
+        this.exporter = exporter;
+
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return sampleRate > 0.0;
+    }
+
+    /**
+     * Starts a span, continuing the parent trace when there is one.
+     *
+     * @param name String
+     * @param kind Span.Kind
+     * @param parent TraceContext, may be null
+     * @return Span, or null when tracing is disabled or the root span is not sampled
+     */
+    public Span startSpan(String name, Span.Kind kind, TraceContext parent) {
+        final double rate = sampleRate;
+
+        if (rate <= 0.0) return null;
+        if (parent == null && rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) return null;
+
+        return new Span(this, parent == null ? newId() : parent.getTraceId(), newId(),
+                parent == null ? null : parent.getSpanId(), name, kind);
+    }
+
+    void record(Span span) {
+        final AtomicReferenceArray<Span> buffer = ring;
+        buffer.set((int) (recorded.getAndIncrement() % buffer.length()), span);
+
+        final Handler<Span> currentExporter = exporter;
+
+        if (currentExporter != null) currentExporter.handle(span);
+    }
+
+    /**
+     * @return JsonArray of the spans in the ring buffer, oldest first
+     */
+    public JsonArray dump() {
+        return dump(null);
+    }
+
+    public JsonArray dump(String traceId) {
+        final AtomicReferenceArray<Span> buffer = ring;
+        final long end = recorded.get();
+        final JsonArray spans = new JsonArray();
+
+        for (long i = Math.max(0L, end - buffer.length()); i < end; i++) {
+            final Span span = buffer.get((int) (i % buffer.length()));
+
+            if (span != null && (traceId == null || traceId.equals(span.context().getTraceId()))) {
+                spans.add(span.toJson());
+            }
+        }
+
+        return spans;
+    }
+
+    public void clear() {
+        setCapacity(ring.length());
+    }
+
+    private static String newId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+}
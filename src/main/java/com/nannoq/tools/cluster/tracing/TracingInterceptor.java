@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.nannoq.tools.cluster.tracing;
+
+import com.nannoq.tools.cluster.services.ServiceInterceptor;
+import com.nannoq.tools.cluster.services.ServiceInvocation;
+
+/**
+ * This class defines a service interceptor that records a span for every sampled service call. On the consuming side
+ * it starts a client span under the current context, which is then sent along with the request. On the publishing
+ * side it starts a server span under the context received with the request, and makes it current while the service
+ * handles it.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class TracingInterceptor implements ServiceInterceptor {
+    private final Tracer tracer;
+
+    public TracingInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void intercept(ServiceInvocation invocation) {
+        final boolean publisher = invocation.getSide() == ServiceInvocation.Side.PUBLISHER;
+        final Span span = tracer.startSpan(invocation.getServiceName() + "." + invocation.getAction(),
+                publisher ? Span.Kind.SERVER : Span.Kind.CLIENT,
+                publisher ? TraceContext.fromHeaders(invocation.getHeaders()) : invocation.getTraceContext());
+
+        if (span != null) {
+            invocation.endHandler(res -> span.finish(res.succeeded(), res.failed() ? res.cause().getMessage() : null));
+            invocation.setTraceContext(span.context());
+        }
+
+        invocation.proceed();
+    }
+}
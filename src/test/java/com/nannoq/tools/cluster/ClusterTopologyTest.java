@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.nannoq.tools.cluster;
+
+import com.hazelcast.config.Config;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class ClusterTopologyTest {
+    private Vertx vertx;
+
+    @Before
+    public void setUp(TestContext testContext) {
+        Config config = new HazelcastClusterManager().loadConfig();
+        config.getGroupConfig().setName(UUID.randomUUID().toString());
+        config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        ClusterUtils.setClusterMembers(config, Collections.singletonList("127.0.0.1"), "");
+
+        VertxOptions options = new VertxOptions()
+                .setClusterManager(ClusterUtils.clusterManagerBuilder().setConfig(config).build());
+        options.getEventBusOptions().setHost("127.0.0.1");
+
+        Async async = testContext.async();
+
+        Vertx.clusteredVertx(options, testContext.asyncAssertSuccess(clustered -> {
+            vertx = clustered;
+
+            async.complete();
+        }));
+    }
+
+    @After
+    public void tearDown(TestContext testContext) {
+        if (vertx != null) vertx.close(testContext.asyncAssertSuccess());
+    }
+
+    @Test
+    public void reportsLocalMember(TestContext testContext) {
+        ClusterTopology topology = ClusterTopology.start(vertx, 100L);
+
+        testContext.assertTrue(topology == ClusterTopology.start(vertx));
+        testContext.assertEquals(1, topology.getMembers().size());
+
+        JsonObject local = topology.getMembers().getJsonObject(0);
+
+        vertx.eventBus().<JsonObject>send(ClusterTopology.TOPOLOGY_ADDRESS, null, testContext.asyncAssertSuccess(reply -> {
+            JsonObject view = reply.body();
+
+            testContext.assertEquals(local.getString("uuid"), view.getString("localMember"));
+            testContext.assertEquals(1, view.getJsonArray("members").size());
+            testContext.assertTrue(view.getJsonArray("departedMembers").isEmpty());
+
+            topology.stop();
+
+            testContext.assertNull(ClusterTopology.get(vertx));
+        }));
+    }
+}
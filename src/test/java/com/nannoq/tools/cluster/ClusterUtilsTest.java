@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.nannoq.tools.cluster;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class ClusterUtilsTest {
+    private Path memberCache;
+
+    @Before
+    public void setUp() throws Exception {
+        memberCache = Files.createTempFile("cluster-members", ".cache");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(memberCache);
+    }
+
+    @Test
+    public void memberCacheRoundTrip(TestContext testContext) throws Exception {
+        Config config = new HazelcastClusterManager().loadConfig();
+        config.getGroupConfig().setName(UUID.randomUUID().toString());
+        config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        ClusterUtils.setClusterMembers(config, Collections.singletonList("127.0.0.1"), "");
+
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance(config);
+
+        try {
+            InetSocketAddress local = hz.getCluster().getLocalMember().getSocketAddress();
+            String member = local.getAddress().getHostAddress() + ":" + local.getPort();
+
+            testContext.assertNotNull(ClusterUtils.persistClusterMembers(hz, memberCache.toString()));
+
+            List<String> known = ClusterUtils.readKnownMembers(memberCache.toString());
+
+            testContext.assertEquals(Collections.singletonList(member), known);
+            testContext.assertEquals(known, new PortScanner(1).scan(known.iterator(), false));
+        } finally {
+            hz.shutdown();
+        }
+    }
+
+    @Test
+    public void corruptedMemberCacheIsScannedPastBadLines(TestContext testContext) throws Exception {
+        Files.write(memberCache, Arrays.asList("", "  10.0.0.1:notaport  ", "garbage:", "10.0.0.2:70000"),
+                StandardCharsets.UTF_8);
+
+        List<String> known = ClusterUtils.readKnownMembers(memberCache.toString());
+
+        testContext.assertEquals(Arrays.asList("10.0.0.1:notaport", "garbage:", "10.0.0.2:70000"), known);
+        testContext.assertTrue(new PortScanner(1).scan(known.iterator(), false).isEmpty());
+    }
+
+    @Test
+    public void missingMemberCacheIsEmpty(TestContext testContext) throws Exception {
+        Files.delete(memberCache);
+
+        testContext.assertTrue(ClusterUtils.readKnownMembers(memberCache.toString()).isEmpty());
+    }
+}
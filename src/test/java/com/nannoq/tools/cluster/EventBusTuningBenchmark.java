@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster;
+
+import com.hazelcast.config.Config;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares request-reply latency and throughput of the clustered eventbus between the default transport and
+ * EventBusTuning, with two clustered nodes on localhost. Every configuration is run once unreported first, so the JIT
+ * does not favour whichever runs last. Latency is measured with one request in flight, throughput with a window of
+ * WINDOW requests. Not part of the test suite, run with main.
+ *
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+public class EventBusTuningBenchmark {
+    private static final String ADDRESS = "com.nannoq.benchmark.echo";
+    private static final int WARMUP = 10000;
+    private static final int MESSAGES = 100000;
+    private static final int LATENCY_MESSAGES = 20000;
+    private static final int WINDOW = 64;
+    private static final int PAYLOAD_SIZE = 512;
+
+    public static void main(String[] args) throws Exception {
+        for (boolean report : new boolean[] {false, true}) {
+            run("DEFAULT", null, report);
+            run("TUNED", 0, report);
+            run("TUNED 1MB BUFFERS", 1024 * 1024, report);
+        }
+
+        System.exit(0);
+    }
+
+    private static void run(String name, Integer bufferSize, boolean report) throws Exception {
+        Vertx server = startNode(bufferSize);
+        Vertx client = startNode(bufferSize);
+
+        server.eventBus().<Buffer>consumer(ADDRESS, message -> message.reply(message.body()));
+
+        Thread.sleep(2000L);
+
+        measure(client, WARMUP, WINDOW);
+
+        final long[] latency = measure(client, LATENCY_MESSAGES, 1);
+        final long[] throughput = measure(client, MESSAGES, WINDOW);
+
+        if (report) {
+            System.out.println(name + ", native transport: " + client.isNativeTransportEnabled());
+            report("  window 1", latency);
+            report("  window " + WINDOW, throughput);
+        }
+
+        close(client);
+        close(server);
+    }
+
+    private static Vertx startNode(Integer bufferSize) throws Exception {
+        Config config = new HazelcastClusterManager().loadConfig();
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        ClusterUtils.setClusterMembers(config, Collections.singletonList("127.0.0.1"), "");
+
+        VertxOptions options = new VertxOptions()
+                .setClusterManager(ClusterUtils.clusterManagerBuilder().setConfig(config).build());
+        options.getEventBusOptions().setHost("127.0.0.1");
+
+        if (bufferSize != null) EventBusTuning.tune(options, bufferSize);
+
+        CompletableFuture<Vertx> node = new CompletableFuture<>();
+        Vertx.clusteredVertx(options, res -> {
+            if (res.failed()) {
+                node.completeExceptionally(res.cause());
+            } else {
+                node.complete(res.result());
+            }
+        });
+
+        return node.get();
+    }
+
+    private static void report(String name, long[] latencies) {
+        final int messages = latencies.length - 1;
+        final long elapsed = latencies[messages];
+        final long[] sorted = Arrays.copyOf(latencies, messages);
+
+        Arrays.sort(sorted);
+
+        System.out.println(String.format("%-12s throughput: %8.0f msg/s, p50: %6d us, p99: %6d us, p99.9: %6d us",
+                name, messages / (elapsed / 1e9),
+                sorted[messages / 2] / 1000, sorted[(int) (messages * 0.99)] / 1000,
+                sorted[(int) (messages * 0.999)] / 1000));
+    }
+
+    /**
+     * Sends the messages with the given number of requests in flight.
+     *
+     * @return long[] of the latency of every message, followed by the total elapsed time
+     */
+    private static long[] measure(Vertx client, int messages, int window) throws Exception {
+        final long[] latencies = new long[messages + 1];
+        final Buffer payload = Buffer.buffer(new byte[PAYLOAD_SIZE]);
+        final DeliveryOptions options = new DeliveryOptions().setSendTimeout(10000L);
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger received = new AtomicInteger();
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+        final long start = System.nanoTime();
+
+        client.runOnContext(v -> {
+            for (int i = 0; i < window; i++) {
+                send(client, payload, options, messages, latencies, sent, received, done, start);
+            }
+        });
+
+        latencies[messages] = done.get();
+
+        return latencies;
+    }
+
+    private static void send(Vertx client, Buffer payload, DeliveryOptions options, int messages, long[] latencies,
+                             AtomicInteger sent, AtomicInteger received, CompletableFuture<Long> done, long start) {
+        final int index = sent.getAndIncrement();
+
+        if (index >= messages) return;
+
+        final long sentAt = System.nanoTime();
+
+        client.eventBus().send(ADDRESS, payload, options, reply -> {
+            if (reply.failed()) {
+                done.completeExceptionally(reply.cause());
+
+                return;
+            }
+
+            latencies[index] = System.nanoTime() - sentAt;
+
+            if (received.incrementAndGet() == messages) {
+                done.complete(System.nanoTime() - start);
+            } else {
+                send(client, payload, options, messages, latencies, sent, received, done, start);
+            }
+        });
+    }
+
+    private static void close(Vertx vertx) throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(res -> closed.complete(null));
+        closed.get();
+    }
+}
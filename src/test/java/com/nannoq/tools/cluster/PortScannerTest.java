@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.nannoq.tools.cluster;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class PortScannerTest {
+    @Test
+    public void findsOpenPortOnLoopback(TestContext testContext) throws Exception {
+        final int closedPort = closedPort();
+
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            List<String> found = new PortScanner(server.getLocalPort()).scan(Arrays.asList(
+                    "127.0.0.1:" + closedPort, "127.0.0.1", "[::1]:" + closedPort).iterator(), false);
+
+            testContext.assertEquals(Collections.singletonList("127.0.0.1"), found);
+        }
+    }
+
+    @Test
+    public void probesHostsOnTheirOwnPort(TestContext testContext) throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            String member = "127.0.0.1:" + server.getLocalPort();
+            List<String> found = new PortScanner(closedPort()).scan(Arrays.asList(
+                    "127.0.0.1", member).iterator(), true);
+
+            testContext.assertEquals(Collections.singletonList(member), found);
+        }
+    }
+
+    @Test
+    public void skipsMalformedAddresses(TestContext testContext) throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            String member = "127.0.0.1:" + server.getLocalPort();
+            List<String> found = new PortScanner(closedPort()).scan(Arrays.asList(
+                    "127.0.0.1:abc", "127.0.0.1:99999", "[::1]:x", member).iterator(), false);
+
+            testContext.assertEquals(Collections.singletonList(member), found);
+        }
+    }
+
+    private static int closedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -25,22 +25,36 @@
 package com.nannoq.tools.cluster.apis;
 
 import com.nannoq.tools.cluster.services.ServiceManager;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import io.vertx.serviceproxy.ServiceException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+
 /**
  * @author Anders Mikkelsen
  * @version 17.11.2017
  */
 @RunWith(VertxUnitRunner.class)
 public class APIManagerTest {
+    private static final int CACHE_BACKEND_PORT = 8793;
+
     @Rule
     public RunTestOnContext rule = new RunTestOnContext();
 
@@ -73,6 +87,183 @@ public class APIManagerTest {
         testContext.assertEquals("TEST_API", record.getName());
     }
 
+    @Test
+    public void createMultiEndpointApiRecord(TestContext testContext) {
+        final Record record = getApiManager().createApiRecord("TEST_API", "/api", false, Arrays.asList(
+                new ApiEndpoint("localhost", 8080, 3),
+                new ApiEndpoint("localhost", 8081, 1)));
+
+        testContext.assertEquals(8080, record.getLocation().getInteger("port"));
+        testContext.assertEquals(2, ApiEndpoint.fromJsonArray(
+                record.getLocation().getJsonArray(ApiEndpoint.ENDPOINTS_KEY)).size());
+
+        ServiceManager.getInstance(rule.vertx()).publishApi(record, published ->
+                ServiceManager.getInstance(rule.vertx()).consumeApi("TEST_API", testContext.asyncAssertSuccess()));
+    }
+
+    @Test
+    public void internalAndExternalEndpointsAreSeparate(TestContext testContext) {
+        final APIManager apiManager = new APIManager(rule.vertx(), new JsonObject(), new APIHostProducer() {
+            @Override
+            public String getInternalHost(String name) {
+                return "internal";
+            }
+
+            @Override
+            public String getExternalHost(String name) {
+                return "external";
+            }
+
+            @Override
+            public List<ApiEndpoint> getInternalEndpoints(String name) {
+                return Arrays.asList(new ApiEndpoint("10.0.0.1", 8080, 2), new ApiEndpoint("10.0.0.2", 8080));
+            }
+
+            @Override
+            public List<ApiEndpoint> getExternalEndpoints(String name) {
+                return Collections.singletonList(new ApiEndpoint("api.example.com", 443));
+            }
+        });
+
+        final List<ApiEndpoint> internal = ApiEndpoint.fromJsonArray(apiManager
+                .createInternalApiRecord("TEST_API", "/api").getLocation().getJsonArray(ApiEndpoint.ENDPOINTS_KEY));
+        final List<ApiEndpoint> external = ApiEndpoint.fromJsonArray(apiManager
+                .createExternalApiRecord("TEST_API", "/api").getLocation().getJsonArray(ApiEndpoint.ENDPOINTS_KEY));
+
+        testContext.assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"),
+                internal.stream().map(ApiEndpoint::getHost).collect(toList()));
+        testContext.assertEquals(2, internal.get(0).getWeight());
+        testContext.assertEquals(1, external.size());
+        testContext.assertEquals("api.example.com", external.get(0).getHost());
+        testContext.assertEquals(443, external.get(0).getPort());
+    }
+
+    @Test
+    public void endpointRequiresHostAndPort(TestContext testContext) {
+        try {
+            new ApiEndpoint(new JsonObject().put("host", "localhost"));
+            testContext.fail("Endpoint without a port was accepted!");
+        } catch (IllegalArgumentException e) {
+            testContext.assertEquals("Endpoint port is required!", e.getMessage());
+        }
+
+        try {
+            ApiEndpoint.fromJsonArray(new JsonArray().add(new JsonObject().put("port", 8080)));
+            testContext.fail("Endpoint without a host was accepted!");
+        } catch (IllegalArgumentException e) {
+            testContext.assertEquals("Endpoint host is required!", e.getMessage());
+        }
+    }
+
+    @Test
+    public void staleWhileRevalidate(TestContext testContext) {
+        Async async = testContext.async();
+        AtomicInteger hits = new AtomicInteger();
+
+        withCachedApi(testContext, request -> request.response()
+                .putHeader("Cache-Control", "max-age=0")
+                .end("v" + hits.incrementAndGet()), apiManager ->
+                apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(first -> {
+            testContext.assertEquals("v1", first.toString());
+
+            apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(stale -> {
+                testContext.assertEquals("v1", stale.toString());
+
+                rule.vertx().setTimer(200L, id -> apiManager.performCachedRequest("CACHED", "/data",
+                        testContext.asyncAssertSuccess(revalidated -> {
+                    testContext.assertEquals("v2", revalidated.toString());
+
+                    async.complete();
+                })));
+            }));
+        })));
+    }
+
+    @Test
+    public void staleOnServerError(TestContext testContext) {
+        Async async = testContext.async();
+        AtomicInteger hits = new AtomicInteger();
+
+        withCachedApi(testContext, request -> {
+            if (hits.incrementAndGet() == 1) {
+                request.response().putHeader("Cache-Control", "max-age=0").end("ok");
+            } else {
+                request.response().setStatusCode(500).end();
+            }
+        }, apiManager -> apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(first ->
+                apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(stale ->
+                        rule.vertx().setTimer(200L, id -> {
+            testContext.assertEquals(2, hits.get());
+
+            apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(kept -> {
+                testContext.assertEquals("ok", kept.toString());
+
+                apiManager.performCachedRequest("CACHED", "/uncached", testContext.asyncAssertFailure(failure -> {
+                    testContext.assertEquals(500, ((ServiceException) failure).failureCode());
+
+                    async.complete();
+                }));
+            }));
+        }))))));
+    }
+
+    @Test
+    public void noStoreAndPrivateAreNotCached(TestContext testContext) {
+        Async async = testContext.async();
+        AtomicInteger hits = new AtomicInteger();
+
+        withCachedApi(testContext, request -> {
+            hits.incrementAndGet();
+
+            request.response()
+                    .putHeader("Cache-Control", request.path().equals("/private") ? "private, max-age=60" : "no-store")
+                    .end("body");
+        }, apiManager -> apiManager.performCachedRequest("CACHED", "/no-store", testContext.asyncAssertSuccess(a ->
+                apiManager.performCachedRequest("CACHED", "/no-store", testContext.asyncAssertSuccess(b ->
+                        apiManager.performCachedRequest("CACHED", "/private", testContext.asyncAssertSuccess(c ->
+                                apiManager.performCachedRequest("CACHED", "/private",
+                                        testContext.asyncAssertSuccess(d -> {
+            testContext.assertEquals(4, hits.get());
+
+            async.complete();
+        })))))))));
+    }
+
+    @Test
+    public void noCacheRevalidatesEveryTime(TestContext testContext) {
+        Async async = testContext.async();
+        AtomicInteger hits = new AtomicInteger();
+        AtomicInteger notModified = new AtomicInteger();
+
+        withCachedApi(testContext, request -> {
+            hits.incrementAndGet();
+
+            if ("\"e1\"".equals(request.getHeader("If-None-Match"))) {
+                notModified.incrementAndGet();
+                request.response().setStatusCode(304).end();
+            } else {
+                request.response().putHeader("Cache-Control", "no-cache").putHeader("ETag", "\"e1\"").end("body");
+            }
+        }, apiManager -> apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(first ->
+                apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(second ->
+                        apiManager.performCachedRequest("CACHED", "/data", testContext.asyncAssertSuccess(third -> {
+            testContext.assertEquals("body", third.toString());
+            testContext.assertEquals(3, hits.get());
+            testContext.assertEquals(2, notModified.get());
+
+            async.complete();
+        })))))));
+    }
+
+    private void withCachedApi(TestContext testContext, Handler<HttpServerRequest> backend,
+                               Handler<APIManager> test) {
+        rule.vertx().createHttpServer().requestHandler(backend).listen(CACHE_BACKEND_PORT,
+                testContext.asyncAssertSuccess(server -> ServiceManager.getInstance(rule.vertx()).publishApi(
+                        HttpEndpoint.createRecord("CACHED", "localhost", CACHE_BACKEND_PORT, "/"), published ->
+                                test.handle(new APIManager(rule.vertx(), new JsonObject()
+                                        .put("apiCacheMaxStale", 60000L))))));
+    }
+
     public APIManager getApiManager() {
         return getApiManager("localhost");
     }
@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster.apis;
+
+import com.nannoq.tools.cluster.Deadline;
+import com.nannoq.tools.cluster.services.ServiceManager;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.Pump;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class ApiGatewayVerticleTest {
+    private static final int BACKEND_PORT = 8791;
+    private static final int GATEWAY_PORT = 8792;
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void proxiesRequestBody(TestContext testContext) {
+        Async async = testContext.async();
+
+        rule.vertx().createHttpServer().requestHandler(request -> {
+            request.response().setChunked(true).putHeader("X-Echo-Path", request.path());
+            request.endHandler(v -> request.response().end());
+
+            Pump.pump(request, request.response()).start();
+        }).listen(BACKEND_PORT, testContext.asyncAssertSuccess(server ->
+                ServiceManager.getInstance(rule.vertx()).publishApi(
+                        HttpEndpoint.createRecord("ECHO", "localhost", BACKEND_PORT, "/"), published -> {
+            final JsonObject config = new JsonObject()
+                    .put("gatewayPort", GATEWAY_PORT)
+                    .put("gatewayRoutes", new JsonObject().put("/echo", "ECHO"));
+
+            rule.vertx().deployVerticle(ApiGatewayVerticle.class.getName(),
+                    new DeploymentOptions().setConfig(config), testContext.asyncAssertSuccess(id ->
+                            rule.vertx().createHttpClient().post(GATEWAY_PORT, "localhost", "/echo/ping", response -> {
+                testContext.assertEquals(200, response.statusCode());
+                testContext.assertEquals("/ping", response.getHeader("X-Echo-Path"));
+
+                response.bodyHandler(body -> {
+                    testContext.assertEquals("gateway body", body.toString());
+                    async.complete();
+                });
+            }).end(Buffer.buffer("gateway body"))));
+        })));
+    }
+
+    @Test
+    public void forwardsQueryOnPrefixRoot(TestContext testContext) {
+        Async async = testContext.async();
+
+        rule.vertx().createHttpServer().requestHandler(request -> request.response()
+                .putHeader("X-Echo-Uri", request.uri())
+                .end()).listen(BACKEND_PORT, testContext.asyncAssertSuccess(server ->
+                ServiceManager.getInstance(rule.vertx()).publishApi(
+                        HttpEndpoint.createRecord("ECHO", "localhost", BACKEND_PORT, "/"), published -> {
+            final JsonObject config = new JsonObject()
+                    .put("gatewayPort", GATEWAY_PORT)
+                    .put("gatewayRoutes", new JsonObject().put("/echo", "ECHO"));
+
+            rule.vertx().deployVerticle(ApiGatewayVerticle.class.getName(),
+                    new DeploymentOptions().setConfig(config), testContext.asyncAssertSuccess(id ->
+                            rule.vertx().createHttpClient().getNow(GATEWAY_PORT, "localhost", "/echo?x=1", response -> {
+                testContext.assertEquals(200, response.statusCode());
+                testContext.assertEquals("/?x=1", response.getHeader("X-Echo-Uri"));
+
+                async.complete();
+            })));
+        })));
+    }
+
+    @Test
+    public void abandonsUpstreamPastDeadline(TestContext testContext) {
+        Async async = testContext.async();
+        AtomicInteger responses = new AtomicInteger();
+        AtomicBoolean upstreamReset = new AtomicBoolean();
+
+        rule.vertx().exceptionHandler(testContext::fail);
+        rule.vertx().createHttpServer().requestHandler(request ->
+                rule.vertx().setTimer(500L, id -> {
+                    upstreamReset.set(request.response().closed());
+
+                    if (!upstreamReset.get()) request.response().end("late");
+                })).listen(BACKEND_PORT, testContext.asyncAssertSuccess(server ->
+                ServiceManager.getInstance(rule.vertx()).publishApi(
+                        HttpEndpoint.createRecord("ECHO", "localhost", BACKEND_PORT, "/"), published -> {
+            final JsonObject config = new JsonObject()
+                    .put("gatewayPort", GATEWAY_PORT)
+                    .put("gatewayRoutes", new JsonObject().put("/echo", "ECHO"));
+
+            rule.vertx().deployVerticle(ApiGatewayVerticle.class.getName(),
+                    new DeploymentOptions().setConfig(config), testContext.asyncAssertSuccess(id ->
+                            rule.vertx().createHttpClient().get(GATEWAY_PORT, "localhost", "/echo/slow", response -> {
+                testContext.assertEquals(Deadline.DEADLINE_EXCEEDED, response.statusCode());
+                responses.incrementAndGet();
+
+                rule.vertx().setTimer(1000L, waited -> {
+                    testContext.assertEquals(1, responses.get());
+                    testContext.assertTrue(upstreamReset.get());
+
+                    async.complete();
+                });
+            }).putHeader(Deadline.HEADER, "100").end()));
+        })));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster.apis;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class ResponseCacheTest {
+    @Test
+    public void putAndGet(TestContext testContext) {
+        ResponseCache cache = new ResponseCache(1024, 0);
+        cache.put("TEST:/", "\"abc\"", Buffer.buffer("body"), 60000L);
+
+        final ResponseCache.Entry entry = cache.get("TEST:/");
+
+        testContext.assertNotNull(entry);
+        testContext.assertEquals("\"abc\"", entry.getEtag());
+        testContext.assertEquals("body", entry.getBody().toString());
+        testContext.assertTrue(entry.isFresh());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed(TestContext testContext) {
+        ResponseCache cache = new ResponseCache(8, 0);
+        cache.put("A", null, Buffer.buffer("1234"), 60000L);
+        cache.put("B", null, Buffer.buffer("1234"), 60000L);
+        cache.get("A");
+        cache.put("C", null, Buffer.buffer("1234"), 60000L);
+
+        testContext.assertNotNull(cache.get("A"));
+        testContext.assertNull(cache.get("B"));
+        testContext.assertNotNull(cache.get("C"));
+        testContext.assertEquals(8L, cache.usedBytes());
+    }
+
+    @Test
+    public void staleEntriesAreServableWithinMaxStale(TestContext testContext) {
+        ResponseCache cache = new ResponseCache(1024, 60000L);
+        cache.put("TEST:/", null, Buffer.buffer("body"), -1L);
+
+        final ResponseCache.Entry entry = cache.get("TEST:/");
+
+        testContext.assertFalse(entry.isFresh());
+        testContext.assertTrue(entry.isServableStale());
+
+        cache.revalidated("TEST:/", 60000L);
+
+        testContext.assertTrue(entry.isFresh());
+    }
+
+    @Test
+    public void skipsOversizedBodies(TestContext testContext) {
+        ResponseCache cache = new ResponseCache(2, 0);
+
+        testContext.assertNull(cache.put("TEST:/", null, Buffer.buffer("body"), 60000L));
+        testContext.assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class ConsistentHashRingTest {
+    @Test
+    public void sameKeySameNode(TestContext testContext) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>().add("A").add("B").add("C");
+
+        IntStream.range(0, 100).forEach(i ->
+                testContext.assertEquals(ring.get("key-" + i), ring.get("key-" + i)));
+    }
+
+    @Test
+    public void removingNodeOnlyRemapsItsKeys(TestContext testContext) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>().add("A").add("B").add("C");
+        Map<String, String> before = new HashMap<>();
+        IntStream.range(0, 1000).forEach(i -> before.put("key-" + i, ring.get("key-" + i)));
+
+        ring.remove("C");
+
+        before.forEach((key, node) -> {
+            if (!node.equals("C")) testContext.assertEquals(node, ring.get(key));
+            else testContext.assertNotEquals("C", ring.get(key));
+        });
+    }
+
+    @Test
+    public void emptyRingReturnsNull(TestContext testContext) {
+        testContext.assertNull(new ConsistentHashRing<String>().get("key"));
+    }
+}
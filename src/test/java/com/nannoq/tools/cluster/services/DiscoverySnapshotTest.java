@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class DiscoverySnapshotTest {
+    @Test
+    public void writeAndRead(TestContext testContext) throws Exception {
+        Path file = Files.createTempFile("discovery", ".snapshot");
+        DiscoverySnapshot snapshot = new DiscoverySnapshot(file);
+
+        Record consumed = HttpEndpoint.createRecord("SOME_API", "localhost", 8080, "/api");
+        snapshot.write(Collections.singletonMap("SOME_API", Collections.singletonList(consumed)));
+
+        List<Record> records = snapshot.read().get("SOME_API");
+
+        testContext.assertEquals(1, records.size());
+        testContext.assertEquals("SOME_API", records.get(0).getName());
+        testContext.assertEquals(consumed.getLocation(), records.get(0).getLocation());
+
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void keepsConsumedNameApartFromRecordName(TestContext testContext) throws Exception {
+        Path file = Files.createTempFile("discovery", ".snapshot");
+        DiscoverySnapshot snapshot = new DiscoverySnapshot(file);
+
+        Record published = HttpEndpoint.createRecord("PUBLISHED_NAME", "localhost", 8080, "/api");
+        Map<String, List<Record>> consumed = new HashMap<>();
+        consumed.put("ConsumedName", Collections.singletonList(published));
+        consumed.put("PUBLISHED_NAME", Collections.singletonList(published));
+        snapshot.write(consumed);
+
+        Map<String, List<Record>> read = snapshot.read();
+
+        testContext.assertEquals(2, read.size());
+        testContext.assertEquals("PUBLISHED_NAME", read.get("ConsumedName").get(0).getName());
+
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void readIgnoresForeignFiles(TestContext testContext) throws Exception {
+        Path file = Files.createTempFile("discovery", ".snapshot");
+        Files.write(file, new JsonObject().put("records", "none").encode().getBytes());
+
+        testContext.assertTrue(new DiscoverySnapshot(file).read().isEmpty());
+
+        Files.deleteIfExists(file);
+    }
+}
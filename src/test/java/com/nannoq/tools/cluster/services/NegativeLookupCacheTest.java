@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster.services;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.stream.IntStream;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class NegativeLookupCacheTest {
+    @Test
+    public void missingUntilInvalidated(TestContext testContext) {
+        NegativeLookupCache cache = new NegativeLookupCache(60000L, 8);
+        cache.missing("A");
+
+        testContext.assertTrue(cache.isMissing("A"));
+
+        cache.invalidate("A");
+
+        testContext.assertFalse(cache.isMissing("A"));
+    }
+
+    @Test
+    public void boundedBySize(TestContext testContext) {
+        NegativeLookupCache cache = new NegativeLookupCache(60000L, 8);
+        IntStream.range(0, 100).forEach(i -> cache.missing("name-" + i));
+
+        testContext.assertEquals(8, cache.size());
+        testContext.assertFalse(cache.isMissing("name-99"));
+    }
+
+    @Test
+    public void expiredNamesMakeRoom(TestContext testContext) throws Exception {
+        NegativeLookupCache cache = new NegativeLookupCache(10L, 8);
+        IntStream.range(0, 8).forEach(i -> cache.missing("name-" + i));
+
+        Thread.sleep(20L);
+
+        cache.missing("A");
+
+        testContext.assertEquals(1, cache.size());
+        testContext.assertTrue(cache.isMissing("A"));
+    }
+}
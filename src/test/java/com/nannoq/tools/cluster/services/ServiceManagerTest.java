@@ -24,10 +24,15 @@
 
 package com.nannoq.tools.cluster.services;
 
+import com.nannoq.tools.cluster.Deadline;
 import com.nannoq.tools.cluster.apis.APIHostProducer;
 import com.nannoq.tools.cluster.apis.APIManager;
 import com.nannoq.tools.cluster.service.HeartBeatServiceImpl;
+import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -35,6 +40,8 @@ import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.Record;
+import io.vertx.serviceproxy.ServiceException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -42,6 +49,14 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 import org.junit.runner.RunWith;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 /**
@@ -68,6 +83,22 @@ public class ServiceManagerTest {
         logger.info("Teardown " + name.getMethodName());
     }
 
+    @Test
+    public void create(TestContext testContext) throws Exception {
+        ServiceManager instance = ServiceManager.getInstance(rule.vertx());
+
+        IntStream.range(0, 100).parallel().forEach(i -> {
+            Async async = testContext.async();
+
+            ServiceManager.create(rule.vertx(), res -> {
+                testContext.assertTrue(res.succeeded());
+                testContext.assertTrue(res.result() == instance);
+
+                async.complete();
+            });
+        });
+    }
+
     @Test
     public void publishApi(TestContext testContext) throws Exception {
         ServiceManager.getInstance(rule.vertx()).publishApi(getApiManager().createExternalApiRecord("SOME_API", "/api"));
@@ -122,6 +153,382 @@ public class ServiceManagerTest {
                                 ServiceManager.getInstance(rule.vertx()).consumeService(HeartbeatService.class, lastRes -> async.complete()))));
     }
 
+    @Test
+    public void negativeLookupClearedOnPublish(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx()).setNegativeLookupTtl(60000L);
+
+        serviceManager.consumeApi("MISSING_API", missing -> {
+            testContext.assertTrue(missing.failed());
+
+            serviceManager.consumeApi("MISSING_API", cached -> {
+                testContext.assertTrue(cached.failed());
+
+                serviceManager.publishApi(getApiManager().createExternalApiRecord("MISSING_API", "/api"), rec ->
+                        serviceManager.consumeApi("MISSING_API", found -> {
+                            testContext.assertTrue(found.succeeded());
+
+                            async.complete();
+                        }));
+            });
+        });
+    }
+
+    @Test
+    public void drainService(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                serviceManager.drainService(HeartbeatService.class.getSimpleName(), rec.result(), 1000L, drained -> {
+                    testContext.assertTrue(drained.succeeded());
+
+                    serviceManager.consumeService(HeartbeatService.class, consumed -> {
+                        testContext.assertTrue(consumed.failed());
+
+                        async.complete();
+                    });
+                }));
+    }
+
+    @Test
+    public void consumeServiceForKey(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                serviceManager.consumeServiceForKey(HeartbeatService.class, "some-key", first ->
+                        serviceManager.consumeServiceForKey(HeartbeatService.class, "some-key", second -> {
+                            testContext.assertTrue(first.succeeded());
+                            testContext.assertTrue(first.result() == second.result());
+
+                            async.complete();
+                        })));
+    }
+
+    @Test
+    public void scatterGather(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), first ->
+                serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), second ->
+                        serviceManager.<HeartbeatService, Boolean>scatterGather(HeartbeatService.class,
+                                HeartbeatService.class.getSimpleName(), HeartbeatService::ping, 1000L, res -> {
+                                    testContext.assertTrue(res.succeeded());
+                                    testContext.assertEquals(2, res.result().getResults().size());
+                                    testContext.assertTrue(res.result().isComplete());
+
+                                    async.complete();
+                                })));
+    }
+
+    @Test
+    public void interceptors(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        TimingInterceptor timing = new TimingInterceptor();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx())
+                .addPublishInterceptor(timing)
+                .addConsumeInterceptor(timing)
+                .addConsumeInterceptor(new InFlightInterceptor());
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                serviceManager.consumeService(HeartbeatService.class, res -> res.result().ping(pingRes -> {
+                    testContext.assertTrue(pingRes.succeeded());
+                    testContext.assertTrue(timing.getTimings().containsKey("CONSUMER:HeartbeatService.ping"));
+
+                    async.complete();
+                })));
+    }
+
+    @Test
+    public void interceptorShortCircuit(TestContext testContext) throws Exception {
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx())
+                .addConsumeInterceptor(invocation -> invocation.fail(403, "Denied"));
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                serviceManager.consumeService(HeartbeatService.class, res ->
+                        res.result().ping(testContext.asyncAssertFailure())));
+    }
+
+    @Test
+    public void memoizeCacheable(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        TimingInterceptor providerTiming = new TimingInterceptor();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx())
+                .addPublishInterceptor(providerTiming)
+                .setCacheable(HeartbeatService.class.getSimpleName(), "ping", 60000L);
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                serviceManager.consumeService(HeartbeatService.class, res -> res.result().ping(first ->
+                        res.result().ping(second -> {
+                            testContext.assertTrue(second.succeeded());
+                            testContext.assertEquals(1L, providerTiming.getTimings()
+                                    .getJsonObject("PUBLISHER:HeartbeatService.ping").getLong("count"));
+
+                            async.complete();
+                        }))));
+    }
+
+    @Test
+    public void invalidationMatchesExactServiceName(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingInterceptor interceptor = new MemoizingInterceptor(rule.vertx(), 16)
+                .cacheable("Foo", "get", 60000L)
+                .cacheable("Foo.Bar", "get", 60000L);
+
+        memoizedCall(interceptor, "Foo", calls);
+        memoizedCall(interceptor, "Foo.Bar", calls);
+        testContext.assertEquals(2, calls.get());
+
+        interceptor.invalidate("Foo");
+
+        rule.vertx().setTimer(100L, id -> {
+            memoizedCall(interceptor, "Foo.Bar", calls);
+            testContext.assertEquals(2, calls.get());
+
+            memoizedCall(interceptor, "Foo", calls);
+            testContext.assertEquals(3, calls.get());
+
+            interceptor.close(testContext.asyncAssertSuccess(v -> async.complete()));
+        });
+    }
+
+    private static void memoizedCall(MemoizingInterceptor interceptor, String serviceName, AtomicInteger calls) {
+        ServiceInvocation invocation = new ServiceInvocation(ServiceInvocation.Side.CONSUMER, serviceName, "get",
+                new Object[] {"id"}, null, Collections.singletonList(interceptor));
+
+        invocation.start(() -> {
+            calls.incrementAndGet();
+            invocation.end(Future.succeededFuture(new JsonObject().put("service", serviceName)));
+        }, res -> {});
+    }
+
+    @Test
+    public void loadShedding(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx()).enableLoadShedding(100L, 200L);
+
+        serviceManager.publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                serviceManager.consumeService(HeartbeatService.class, res -> res.result().ping(healthy -> {
+                    testContext.assertTrue(healthy.succeeded());
+
+                    blockEventLoop(500L);
+
+                    rule.vertx().setTimer(1L, id -> res.result().ping(lagging -> {
+                        testContext.assertTrue(lagging.failed());
+                        testContext.assertEquals(LoadSheddingInterceptor.OVERLOADED,
+                                ((ServiceException) lagging.cause()).failureCode());
+
+                        rule.vertx().setTimer(600L, recoveredId -> res.result().ping(recovered -> {
+                            testContext.assertTrue(recovered.succeeded());
+                            serviceManager.disableLoadShedding();
+
+                            async.complete();
+                        }));
+                    }));
+                })));
+    }
+
+    @Test
+    public void loadSheddingProbeStopsWithContext(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        LoadSheddingInterceptor interceptor = new LoadSheddingInterceptor(rule.vertx(), 100L);
+        ServiceInvocation invocation = new ServiceInvocation(ServiceInvocation.Side.PUBLISHER, "TEST", "ping", null,
+                null, Collections.singletonList(interceptor));
+
+        rule.vertx().deployVerticle(new AbstractVerticle() {
+            @Override
+            public void start() throws Exception {
+                invocation.start(() -> {}, res -> {});
+            }
+        }, testContext.asyncAssertSuccess(deploymentId -> {
+            testContext.assertEquals(1, interceptor.probeCount());
+
+            rule.vertx().undeploy(deploymentId, testContext.asyncAssertSuccess(v -> {
+                testContext.assertEquals(0, interceptor.probeCount());
+
+                async.complete();
+            }));
+        }));
+    }
+
+    private static void blockEventLoop(long millis) {
+        final long until = System.currentTimeMillis() + millis;
+
+        while (System.currentTimeMillis() < until) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void priorityLanes(TestContext testContext) throws Exception {
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+        String serviceName = HeartbeatService.class.getSimpleName();
+
+        serviceManager.publishService(HeartbeatService.class, serviceName, new HeartBeatServiceImpl(), 16, rec -> {
+            Async high = testContext.async();
+            Async low = testContext.async();
+
+            serviceManager.consumeService(HeartbeatService.class, serviceName, ServicePriority.HIGH, res ->
+                    checkService(testContext, high, res));
+            serviceManager.consumeService(HeartbeatService.class, serviceName, ServicePriority.LOW, res ->
+                    checkService(testContext, low, res));
+        });
+    }
+
+    @Test
+    public void priorityLanesOrderAndReject(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+        String serviceName = HeartbeatService.class.getSimpleName();
+        List<String> order = new ArrayList<>();
+        List<ServiceInvocation> held = new ArrayList<>();
+        List<Integer> rejected = new ArrayList<>();
+
+        serviceManager.addPublishInterceptor(invocation -> {
+            order.add(invocation.getHeaders().get("lane"));
+            held.add(invocation);
+        });
+
+        serviceManager.publishService(HeartbeatService.class, serviceName, new HeartBeatServiceImpl(), 2, rec -> {
+            Async replies = testContext.async(4);
+
+            for (ServicePriority priority : new ServicePriority[]{ServicePriority.LOW, ServicePriority.LOW,
+                    ServicePriority.NORMAL, ServicePriority.HIGH, ServicePriority.LOW}) {
+                rule.vertx().eventBus().send(priority.address(serviceName), new JsonObject(), new DeliveryOptions()
+                        .addHeader("action", "ping")
+                        .addHeader("lane", priority.name()), reply -> {
+                    if (reply.failed()) {
+                        rejected.add(((ReplyException) reply.cause()).failureCode());
+                    } else {
+                        replies.countDown();
+                    }
+                });
+            }
+
+            rule.vertx().setTimer(200L, first -> {
+                testContext.assertEquals(Arrays.asList("HIGH", "NORMAL"), order);
+                testContext.assertEquals(Collections.singletonList(ServicePriority.LOW_PRIORITY_REJECTED), rejected);
+
+                release(held);
+
+                rule.vertx().setTimer(200L, second -> {
+                    testContext.assertEquals(Arrays.asList("HIGH", "NORMAL", "LOW"), order);
+
+                    release(held);
+
+                    rule.vertx().setTimer(200L, third -> {
+                        testContext.assertEquals(Arrays.asList("HIGH", "NORMAL", "LOW", "LOW"), order);
+
+                        release(held);
+                        async.complete();
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void highPriorityOvertakesWaitingNormal(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+        String serviceName = HeartbeatService.class.getSimpleName();
+        List<String> order = new ArrayList<>();
+        List<ServiceInvocation> held = new ArrayList<>();
+
+        serviceManager.addPublishInterceptor(invocation -> {
+            order.add(invocation.getHeaders().get("lane"));
+            held.add(invocation);
+        });
+
+        serviceManager.publishService(HeartbeatService.class, serviceName, new HeartBeatServiceImpl(), 2, rec -> {
+            for (int i = 0; i <= ServiceDispatcher.PRIORITIZED_IN_FLIGHT; i++) {
+                sendOnLane(serviceName, ServicePriority.NORMAL);
+            }
+
+            rule.vertx().setTimer(100L, first -> {
+                testContext.assertEquals(ServiceDispatcher.PRIORITIZED_IN_FLIGHT, order.size());
+
+                sendOnLane(serviceName, ServicePriority.HIGH);
+
+                rule.vertx().setTimer(100L, second -> {
+                    held.remove(0).proceed();
+
+                    rule.vertx().setTimer(100L, third -> {
+                        testContext.assertEquals("HIGH", order.get(ServiceDispatcher.PRIORITIZED_IN_FLIGHT));
+
+                        release(held);
+                        async.complete();
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void laneProxiesAreDroppedWithTheService(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+        String serviceName = HeartbeatService.class.getSimpleName();
+
+        serviceManager.publishService(HeartbeatService.class, serviceName, new HeartBeatServiceImpl(), 16, laned ->
+                serviceManager.consumeService(HeartbeatService.class, serviceName, ServicePriority.HIGH, high ->
+                        high.result().ping(pinged -> serviceManager.unPublishService(serviceName, laned.result(),
+                                unpublished -> rule.vertx().setTimer(200L, id ->
+                                        serviceManager.publishService(HeartbeatService.class, serviceName,
+                                                new HeartBeatServiceImpl(), plain ->
+                                                        serviceManager.consumeService(HeartbeatService.class,
+                                                                serviceName, ServicePriority.HIGH, fallback ->
+                                                                        fallback.result().ping(res -> {
+            testContext.assertTrue(res.succeeded());
+
+            async.complete();
+        }))))))));
+    }
+
+    private void sendOnLane(String serviceName, ServicePriority priority) {
+        rule.vertx().eventBus().send(priority.address(serviceName), new JsonObject(), new DeliveryOptions()
+                .addHeader("action", "ping")
+                .addHeader("lane", priority.name()), reply -> {});
+    }
+
+    private static void release(List<ServiceInvocation> held) {
+        new ArrayList<>(held).forEach(ServiceInvocation::proceed);
+        held.clear();
+    }
+
+    @Test
+    public void snapshotKeepsServicesConsumedByInterface(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+        ServiceManager serviceManager = ServiceManager.getInstance(rule.vertx());
+        Path file = Files.createTempFile("discovery", ".snapshot");
+
+        serviceManager.publishService(HeartbeatService.class, "OTHER_NAME", new HeartBeatServiceImpl(), rec ->
+                serviceManager.consumeService(HeartbeatService.class, consumed -> {
+            testContext.assertTrue(consumed.succeeded());
+
+            serviceManager.enableDiscoverySnapshot(file.toString(), 100L);
+
+            rule.vertx().setTimer(500L, id -> {
+                try {
+                    List<Record> records = new DiscoverySnapshot(file).read()
+                            .get(HeartbeatService.class.getSimpleName());
+
+                    testContext.assertNotNull(records);
+                    testContext.assertEquals("OTHER_NAME", records.get(0).getName());
+
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    testContext.fail(e);
+                }
+
+                async.complete();
+            });
+        }));
+    }
+
     @Test
     public void consumeService(TestContext testContext) throws Exception {
         ServiceManager.getInstance(rule.vertx()).publishService(HeartbeatService.class, new HeartBeatServiceImpl());
@@ -138,6 +545,38 @@ public class ServiceManagerTest {
         });
     }
 
+    @Test
+    public void prefetch(TestContext testContext) throws Exception {
+        ServiceManager.getInstance(rule.vertx()).publishService(HeartbeatService.class, new HeartBeatServiceImpl());
+        ServiceManager.getInstance(rule.vertx()).publishApi(getApiManager().createExternalApiRecord("SOME_API", "/api"));
+
+        ServiceDependencies dependencies = new ServiceDependencies()
+                .addService(HeartbeatService.class)
+                .addApi("SOME_API")
+                .setAwaitAvailability(true)
+                .setAwaitTimeout(5000L)
+                .setRetryInterval(100L);
+
+        ServiceManager.getInstance(rule.vertx()).prefetch(dependencies, testContext.asyncAssertSuccess(v ->
+                ServiceManager.getInstance(rule.vertx()).cancelPrefetch(dependencies)));
+    }
+
+    @Test
+    public void consumeServiceWithDeadline(TestContext testContext) throws Exception {
+        Async async = testContext.async();
+
+        ServiceManager.getInstance(rule.vertx()).publishService(HeartbeatService.class, new HeartBeatServiceImpl(), rec ->
+                ServiceManager.getInstance(rule.vertx()).consumeService(HeartbeatService.class, "HeartbeatService",
+                        Deadline.in(5000L), res -> checkService(testContext, async, res)));
+    }
+
+    @Test
+    public void consumeServiceWithExpiredDeadline(TestContext testContext) throws Exception {
+        ServiceManager.getInstance(rule.vertx()).publishService(HeartbeatService.class, new HeartBeatServiceImpl());
+        ServiceManager.getInstance(rule.vertx()).consumeService(HeartbeatService.class, "HeartbeatService",
+                Deadline.in(-1L), testContext.asyncAssertFailure());
+    }
+
     public void checkService(TestContext testContext, Async async, AsyncResult<HeartbeatService> res) {
         if (res.failed()) {
             testContext.fail(res.cause());
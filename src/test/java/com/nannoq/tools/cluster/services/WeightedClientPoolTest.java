@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.nannoq.tools.cluster.services;
+
+import com.nannoq.tools.cluster.apis.APIManager;
+import com.nannoq.tools.cluster.apis.ApiEndpoint;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.impl.HttpClientImpl;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.Record;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class WeightedClientPoolTest {
+    private static final int PICKS = 20000;
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void honoursWeights(TestContext testContext) {
+        WeightedClientPool pool = new WeightedClientPool(rule.vertx(), record(Arrays.asList(
+                new ApiEndpoint("localhost", 8080, 3),
+                new ApiEndpoint("localhost", 8081, 1))));
+        Map<Integer, Integer> picks = new HashMap<>();
+
+        for (int i = 0; i < PICKS; i++) {
+            picks.merge(port(pool.next()), 1, Integer::sum);
+        }
+
+        pool.close();
+
+        testContext.assertEquals(2, picks.size());
+
+        double heavy = picks.get(8080) / (double) PICKS;
+
+        testContext.assertTrue(heavy > 0.72 && heavy < 0.78, "Weight 3 of 4 was picked " + heavy + " of the time");
+    }
+
+    @Test
+    public void singleEndpointIsAlwaysPicked(TestContext testContext) {
+        WeightedClientPool pool = new WeightedClientPool(rule.vertx(), record(Collections.singletonList(
+                new ApiEndpoint("localhost", 8080, 5))));
+        HttpClient client = pool.next();
+
+        for (int i = 0; i < 100; i++) {
+            testContext.assertTrue(client == pool.next());
+        }
+
+        pool.close();
+    }
+
+    @Test
+    public void recordsWithoutEndpointsAreNotMultiEndpoint(TestContext testContext) {
+        testContext.assertFalse(WeightedClientPool.isMultiEndpoint(new Record().setLocation(new JsonObject())));
+        testContext.assertTrue(WeightedClientPool.isMultiEndpoint(record(Collections.singletonList(
+                new ApiEndpoint("localhost", 8080)))));
+    }
+
+    private Record record(List<ApiEndpoint> endpoints) {
+        return new APIManager(rule.vertx(), new JsonObject()).createApiRecord("TEST_API", "/api", false, endpoints);
+    }
+
+    private static int port(HttpClient client) {
+        return ((HttpClientImpl) client).getOptions().getDefaultPort();
+    }
+}
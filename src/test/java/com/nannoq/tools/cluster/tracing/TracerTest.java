@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Anders Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nannoq.tools.cluster.tracing;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * @author Anders Mikkelsen
+ * @version 17.11.2017
+ */
+@RunWith(VertxUnitRunner.class)
+public class TracerTest {
+    private final Tracer tracer = new Tracer();
+
+    @Test
+    public void disabledTracerDoesNotSample(TestContext testContext) {
+        testContext.assertNull(tracer.startSpan("test", Span.Kind.INTERNAL, null));
+    }
+
+    @Test
+    public void childSpansShareTrace(TestContext testContext) {
+        tracer.setSampleRate(1.0);
+
+        Span root = tracer.startSpan("root", Span.Kind.CLIENT, null);
+        TraceContext received = TraceContext.fromHeaders(root.context().writeTo(MultiMap.caseInsensitiveMultiMap()));
+        Span child = tracer.startSpan("child", Span.Kind.SERVER, received);
+
+        child.finish(true, null);
+        root.finish(true, null);
+
+        JsonArray spans = tracer.dump(root.context().getTraceId());
+
+        testContext.assertEquals(2, spans.size());
+        testContext.assertEquals(root.context().getSpanId(), spans.getJsonObject(0).getString("parentSpanId"));
+    }
+
+    @Test
+    public void ringBufferKeepsLatestSpans(TestContext testContext) {
+        tracer.setSampleRate(1.0).setCapacity(2);
+
+        tracer.startSpan("first", Span.Kind.INTERNAL, null).finish(true, null);
+        tracer.startSpan("second", Span.Kind.INTERNAL, null).finish(true, null);
+        tracer.startSpan("third", Span.Kind.INTERNAL, null).finish(false, "failed");
+
+        JsonArray spans = tracer.dump();
+
+        testContext.assertEquals(2, spans.size());
+        testContext.assertEquals("second", spans.getJsonObject(0).getString("name"));
+        testContext.assertEquals("failed", spans.getJsonObject(1).getString("error"));
+    }
+
+    @Test
+    public void finishingTwiceRecordsOnce(TestContext testContext) {
+        tracer.setSampleRate(1.0);
+
+        Span span = tracer.startSpan("once", Span.Kind.INTERNAL, null);
+        span.finish(true, null);
+        span.finish(false, "again");
+
+        testContext.assertEquals(1, tracer.dump().size());
+        testContext.assertTrue(tracer.dump().getJsonObject(0).getBoolean("succeeded"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        tracer.setCapacity(0);
+    }
+
+    @Test
+    public void tracersArePerVertx(TestContext testContext) {
+        Vertx first = Vertx.vertx();
+        Vertx second = Vertx.vertx();
+
+        try {
+            Tracer.getInstance(first).setSampleRate(1.0);
+
+            testContext.assertTrue(Tracer.getInstance(first).isEnabled());
+            testContext.assertFalse(Tracer.getInstance(second).isEnabled());
+        } finally {
+            Tracer.removeInstance(first);
+            Tracer.removeInstance(second);
+            first.close();
+            second.close();
+        }
+    }
+}